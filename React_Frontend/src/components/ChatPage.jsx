@@ -2,8 +2,8 @@ import React, { useCallback, useEffect, useMemo, useRef, useState } from 'react'
 import { MdAttachFile, MdSend ,MdMenu} from 'react-icons/md'
 import { useChatContext } from '../context/ChatContext'
 import { BASE_URL } from '../config/AxiosHelper';
-import SockJS from "sockjs-client";
 import { Stomp } from "@stomp/stompjs";
+import { createChatSocket } from "../config/ChatSocket";
 import { toast } from 'react-hot-toast';
 import { useNavigate } from 'react-router';
 import { getMessagess, getPastRoomUsersApi } from '../services/RoomService';
@@ -11,6 +11,7 @@ import { timeAgo } from '../config/helper';
 import { useAuth } from '../context/AuthContext';
 import UserSideBar from './UserSideBar';
 import ImagePreviewModal from './ImagePreviewModal';
+import RoomSearch from './RoomSearch';
 
 
 const ChatPage = () => {
@@ -138,10 +139,10 @@ const ChatPage = () => {
         if (!connected || !roomId || !token || loadingAuth || !userProfile) return;
 
         setIsConnecting(true);
-        const sock = new SockJS(`${BASE_URL}/chat`);
-        const client = Stomp.over(sock);
+        const client = Stomp.over(createChatSocket);
         client.debug = (str) => { if (str.includes('>>> PING') || str.includes('<<< PONG')) return; };
-        const headers = { 'Authorization': `Bearer ${token}` };
+        // X-Accept-Batch: the server may send several room messages in one frame (a JSON array)
+        const headers = { 'Authorization': `Bearer ${token}`, 'X-Accept-Batch': 'true' };
 
         client.connect(headers, () => {
             stompClientRef.current = client;
@@ -149,8 +150,9 @@ const ChatPage = () => {
             setIsConnecting(false);
 
             client.subscribe(`/topic/room/${roomId}`, (message) => {
-                const newMessage = JSON.parse(message.body);
-                setMessages((prev) => [...prev, newMessage]);
+                const body = JSON.parse(message.body);
+                const newMessages = Array.isArray(body) ? body : [body];
+                setMessages((prev) => [...prev, ...newMessages]);
             }, (error) => {
                 console.error("STOMP subscription error for messages:", error);
                 toast.error("Lost connection to chat. Please refresh.");
@@ -440,6 +442,7 @@ const ChatPage = () => {
                     <h4 className="text-md font-medium mb-2 mt-6 text-gray-200 text-center break-words">
                         Room: <span className="text-rose-400">{roomId}</span>
                     </h4>
+                    <RoomSearch roomId={roomId} />
                     <h4 className="text-md font-medium mb-2 mt-2 text-gray-200">Connected Users</h4>
                     <UserSideBar
                         users={uniqueUserEmailsForSidebar}
@@ -1,8 +1,7 @@
 import React, { useCallback, useEffect, useMemo, useRef, useState } from 'react';
 import { MdSend, MdMenu, MdLogin, MdClose, MdInfoOutline, MdLock, MdPublic } from 'react-icons/md';
-import { BASE_URL } from '../config/AxiosHelper';
-import SockJS from "sockjs-client";
 import { Stomp } from "@stomp/stompjs";
+import { createChatSocket } from "../config/ChatSocket";
 import { toast } from 'react-hot-toast';
 import { useNavigate } from 'react-router';
 import { timeAgo } from '../config/helper';
@@ -115,14 +114,15 @@ const GlobalChat = () => {
         if (!currentUser) return;
         const connectWebSocket = () => {
             setIsConnecting(true);
-            const client = Stomp.over(() => new SockJS(`${BASE_URL}/chat`));
+            const client = Stomp.over(createChatSocket);
             client.debug = () => {};
             client.reconnectDelay = 5000;
 
             client.connect(
+                // X-Accept-Batch: the server may send several messages in one frame (a JSON array)
                 currentUser.isGuest 
-                    ? { "X-Guest-Mode": "true" } 
-                    : { "Authorization": `Bearer ${token}`, "X-Guest-Mode": "false" },
+                    ? { "X-Guest-Mode": "true", "X-Accept-Batch": "true" } 
+                    : { "Authorization": `Bearer ${token}`, "X-Guest-Mode": "false", "X-Accept-Batch": "true" },
                 () => {
                     console.log("✅ Connected to Global Stage");
                     setConnected(true);
@@ -130,17 +130,29 @@ const GlobalChat = () => {
                     stompClientRef.current = client;
 
                     client.subscribe("/topic/global", (message) => {
-                        const receivedMessage = JSON.parse(message.body);
+                        const body = JSON.parse(message.body);
+                        const receivedMessages = Array.isArray(body) ? body : [body];
                         setMessages((prev) => {
-                            const isDuplicate = prev.some(msg => 
+                            const fresh = receivedMessages.filter(receivedMessage => !prev.some(msg => 
                                 msg.senderId === receivedMessage.senderId && 
                                 msg.content === receivedMessage.content &&
                                 Math.abs(new Date(msg.timeStamp) - new Date(receivedMessage.timeStamp)) < 1000
-                            );
-                            if (isDuplicate) return prev;
-                            return [...prev, receivedMessage];
+                            ));
+                            if (fresh.length === 0) return prev;
+                            return [...prev, ...fresh];
                         });
                     });
+
+                    // One-off reply with the recent global messages kept by the server
+                    const historySubscription = client.subscribe("/app/global/history", (message) => {
+                        const history = JSON.parse(message.body);
+                        setMessages((prev) => {
+                            const seen = new Set(prev.map(msg => msg.messageId));
+                            const older = history.filter(msg => !seen.has(msg.messageId));
+                            return older.length === 0 ? prev : [...older, ...prev];
+                        });
+                        historySubscription.unsubscribe();
+                    });
                     toast.success(currentUser.isGuest ? `Welcome to the Stage, ${currentUser.name}!` : "Welcome back to the Stage!");
                 },
                 (error) => {
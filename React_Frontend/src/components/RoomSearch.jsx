@@ -0,0 +1,76 @@
+import { useState } from "react";
+import { toast } from "react-hot-toast";
+import { searchMessagesApi } from "../services/RoomService";
+import { timeAgo } from "../config/helper";
+
+// Search box of the chat sidebar. The server only searches the newest messages of a room,
+// so when the results are not complete the part of the history that was searched is shown
+const RoomSearch = ({ roomId }) => {
+    const [query, setQuery] = useState("");
+    const [results, setResults] = useState(null);
+    const [searching, setSearching] = useState(false);
+
+    const handleSearch = async (e) => {
+        e.preventDefault();
+        if (!query.trim()) {
+            setResults(null);
+            return;
+        }
+        setSearching(true);
+        try {
+            setResults(await searchMessagesApi(roomId, query.trim()));
+        } catch (error) {
+            console.error("Error searching messages:", error);
+            toast.error("Search failed, please try again.");
+        } finally {
+            setSearching(false);
+        }
+    };
+
+    return (
+        <div className="mt-4 pb-4 border-b border-gray-700">
+            <form onSubmit={handleSearch} className="flex gap-2">
+                <input
+                    type="text"
+                    value={query}
+                    onChange={(e) => setQuery(e.target.value)}
+                    placeholder='Search: word, "a phrase", pre*'
+                    className="flex-grow min-w-0 px-3 py-1.5 rounded bg-gray-800 border border-gray-700 text-sm focus:outline-none focus:border-rose-500"
+                />
+                <button
+                    type="submit"
+                    disabled={searching}
+                    className="px-3 py-1.5 rounded bg-rose-600 hover:bg-rose-700 text-sm font-medium transition duration-200 disabled:opacity-50"
+                >
+                    {searching ? "..." : "Go"}
+                </button>
+            </form>
+
+            {results && (
+                <div className="mt-3">
+                    <p className="text-xs text-gray-400 mb-2">
+                        {results.totalHits} {results.totalHits === 1 ? "match" : "matches"}
+                    </p>
+                    {!results.complete && (
+                        <p className="text-xs text-yellow-400 mb-2">
+                            Only the newest {results.searchedMessages} messages
+                            {results.searchedFrom && ` (since ${timeAgo(results.searchedFrom)})`} were searched,
+                            older history of this room isn't searchable.
+                        </p>
+                    )}
+                    <ul className="space-y-2 max-h-64 overflow-y-auto custom-scrollbar">
+                        {results.messages.map((message) => (
+                            <li key={message.seq} className="bg-gray-800 rounded p-2">
+                                <p className="text-xs font-bold text-rose-300 break-words">{message.sender}</p>
+                                <p className="text-sm break-words" style={{ overflowWrap: "anywhere" }}>{message.content}</p>
+                                <p className="text-[11px] text-gray-400 mt-1">{timeAgo(message.timeStamp)}</p>
+                            </li>
+                        ))}
+                    </ul>
+                </div>
+            )}
+        </div>
+    );
+};
+
+export default RoomSearch;
@@ -29,6 +29,7 @@ const JoinRoom = () => {
     const [isSidebarOpen, setIsSidebarOpen] = useState(true);
     const [prevRooms, setPrevRooms] = useState([]); 
     const [loadingHistory, setLoadingHistory] = useState(true); 
+    const [historyCursor, setHistoryCursor] = useState(null); // null = no more rooms to load
 
    const [details,setDetails] = useState({
      name: userProfile?.name || chatContextUserName || "",
@@ -51,7 +52,8 @@ const JoinRoom = () => {
                 setLoadingHistory(true);
                 try {
                     const history = await getRoomHistoryApi(10); 
-                    setPrevRooms(history);
+                    setPrevRooms(history.rooms);
+                    setHistoryCursor(history.hasMore ? history.nextCursor : null);
                 } catch (error) {
                     console.error("Error fetching room history:", error);
                     toast.error("Failed to load room history.");
@@ -60,6 +62,7 @@ const JoinRoom = () => {
                 }
             } else if (!loadingAuth && !userProfile) {
                 setPrevRooms([]); 
+                setHistoryCursor(null);
                 setLoadingHistory(false);
             }
         };
@@ -67,6 +70,18 @@ const JoinRoom = () => {
         fetchRoomHistory();
     }, [userProfile, loadingAuth]);
 
+   async function loadMoreRooms(){
+        if (!historyCursor) return;
+        try {
+            const history = await getRoomHistoryApi(10, historyCursor);
+            setPrevRooms(prevRoomsList => [...prevRoomsList, ...history.rooms]);
+            setHistoryCursor(history.hasMore ? history.nextCursor : null);
+        } catch (error) {
+            console.error("Error fetching more rooms:", error);
+            toast.error("Failed to load more rooms.");
+        }
+   }
+
    function handleFormInputChange(event){
         setDetails({ ...details, [event.target.name]:event.target.value })
    }
@@ -250,6 +265,14 @@ const JoinRoom = () => {
                                 </li>
                             ))
                         )}
+                        {!loadingHistory && historyCursor && (
+                            <li
+                                onClick={loadMoreRooms}
+                                className="p-2 text-center text-rose-400 hover:text-rose-300 text-sm cursor-pointer"
+                            >
+                                Load more
+                            </li>
+                        )}
                     </ul>
                 </div>
             </div>
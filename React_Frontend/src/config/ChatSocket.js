@@ -0,0 +1,13 @@
+import SockJS from "sockjs-client";
+import { BASE_URL } from "./AxiosHelper";
+
+// Socket factory for the STOMP client.
+// Uses the native WebSocket endpoint (/chat-ws) when the browser has WebSocket support,
+// and the SockJS endpoint (/chat) when it doesn't or when VITE_USE_SOCKJS=true
+// (e.g. behind a proxy that blocks WebSocket upgrades).
+export const createChatSocket = () => {
+    if (import.meta.env.VITE_USE_SOCKJS !== "true" && typeof WebSocket !== "undefined") {
+        return new WebSocket(`${BASE_URL.replace(/^http/, "ws")}/chat-ws`);
+    }
+    return new SockJS(`${BASE_URL}/chat`);
+};
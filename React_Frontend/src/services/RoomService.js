@@ -1,4 +1,5 @@
-import HttpClient from "../config/AxiosHelper";
+import axios from "axios";
+import HttpClient, { BASE_URL } from "../config/AxiosHelper";
 
 
 export const createRoom = async (roomId) => {
@@ -32,6 +33,14 @@ export const getMessagess = async (roomId, size = 50, page = 0) => {
   return response.data;
 };
 
+export const searchMessagesApi = async (roomId, query, page = 0, size = 20) => {
+  const response = await HttpClient.get(`/api/v1/rooms/${roomId}/search`, {
+    params: { q: query, page, size },
+  });
+  // { messages, page, size, totalHits, complete, searchedMessages, searchedFrom }
+  return response.data;
+};
+
 export const getProfileByEmailApi = async (email) => {
     try{
       const response = await HttpClient.get(`/api/v1/user/profile-by-email?email=${email}`);
@@ -73,10 +82,14 @@ export const getProfileApi = async () => {
     return response.data;
 };
 
-export const getRoomHistoryApi = async (limit = 10) => {
+export const getRoomHistoryApi = async (limit = 10, cursor = null) => {
     // HttpClient should automatically attach the JWT token from localStorage
-    const response = await HttpClient.get(`/api/v1/user/rooms/history?limit=${limit}`);
-    return response.data; // This will be the list of Room objects
+    const params = { limit };
+    if (cursor) {
+        params.cursor = cursor; // nextCursor of the previous page
+    }
+    const response = await HttpClient.get('/api/v1/user/rooms/history', { params });
+    return response.data; // { rooms: [...room summaries], nextCursor, hasMore }
 };
 
 export const getPastRoomUsersApi = async (roomMongoId) => {
@@ -111,7 +124,40 @@ export const deleteAccountApi = async (password) => {
     const response = await HttpClient.delete('/api/v1/auth/delete-account', {
         data: { password }
     });
-    return response.data;
+    // The deletion runs in the background on the server: wait until its job is done
+    return waitForAccountDeletionApi(response.data.jobId);
+};
+
+// Polled without the JWT (plain axios, not HttpClient): once the account is deleted the token
+// no longer maps to a user and the server would answer 401 to any request that carries it
+export const getAccountDeletionStatusApi = async (jobId) => {
+    const response = await axios.get(`${BASE_URL}/api/v1/auth/delete-account/${jobId}`);
+    return response.data; // { jobId, status, phase, progressDone, progressTotal }
+};
+
+export const waitForAccountDeletionApi = async (jobId, intervalMs = 1000, timeoutMs = 5 * 60 * 1000) => {
+    const deadline = Date.now() + timeoutMs;
+    while (Date.now() < deadline) {
+        let job;
+        try {
+            job = await getAccountDeletionStatusApi(jobId);
+        } catch (error) {
+            const status = error.response && error.response.status;
+            // The job was accepted: a missing job or an unauthorized answer means the account is gone
+            if (status === 401 || status === 404) {
+                return { jobId, status: 'COMPLETED' };
+            }
+            throw error;
+        }
+        if (job.status === 'COMPLETED') {
+            return job;
+        }
+        if (job.status === 'FAILED') {
+            throw new Error('Account deletion failed.');
+        }
+        await new Promise(resolve => setTimeout(resolve, intervalMs));
+    }
+    throw new Error('Account deletion is taking longer than expected. Please check again later.');
 };
 
 // export const checkUsernameApi = async (username) => {
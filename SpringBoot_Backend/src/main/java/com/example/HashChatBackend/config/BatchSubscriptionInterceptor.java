@@ -0,0 +1,95 @@
+package com.example.HashChatBackend.config;
+
+import com.example.HashChatBackend.service.BroadcastBatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Negotiates batched broadcasts (see BroadcastBatcher).
+ * A client that sends "X-Accept-Batch: true" on CONNECT has its subscriptions to
+ * /topic/room/{roomId} and /topic/global moved to the matching /batch destination, where
+ * each frame body is a JSON array of messages. Clients without the header are not affected.
+ * The /batch subscriptions of each session are reported to the batcher (and withdrawn on
+ * UNSUBSCRIBE and DISCONNECT), so it only collects batches that someone on this node receives.
+ */
+@Component
+public class BatchSubscriptionInterceptor implements ChannelInterceptor {
+
+    private static final String ACCEPT_BATCH_ATTRIBUTE = "acceptBatch";
+
+    // subscription id -> batched topic, for this session's /batch subscriptions
+    private static final String BATCH_SUBSCRIPTIONS_ATTRIBUTE = "batchSubscriptions";
+
+    // Only the message topics are batched, not .../activeUsers or /topic/profileUpdates
+    private static final Pattern BATCHABLE = Pattern.compile("^/topic/(global|room/[^/]+)$");
+
+    // Lazy: the batcher sends through the broker, which is still being built when WebSocketConfig needs this
+    @Autowired
+    @Lazy
+    private BroadcastBatcher broadcastBatcher;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !broadcastBatcher.isEnabled()) {
+            return message;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+
+        if (StompCommand.CONNECT.equals(accessor.getCommand()) && attributes != null) {
+            if ("true".equalsIgnoreCase(accessor.getFirstNativeHeader("X-Accept-Batch"))) {
+                attributes.put(ACCEPT_BATCH_ATTRIBUTE, Boolean.TRUE);
+            }
+        }
+
+        if (StompCommand.SUBSCRIBE.equals(accessor.getCommand()) && attributes != null
+                && Boolean.TRUE.equals(attributes.get(ACCEPT_BATCH_ATTRIBUTE))) {
+            String destination = accessor.getDestination();
+            if (destination != null && BATCHABLE.matcher(destination).matches()) {
+                accessor.setDestination(destination + BroadcastBatcher.BATCH_SUFFIX);
+                String previous = batchSubscriptions(attributes).put(accessor.getSubscriptionId(), destination);
+                if (previous != null) {
+                    broadcastBatcher.unsubscribed(previous); // same subscription id reused without UNSUBSCRIBE
+                }
+                broadcastBatcher.subscribed(destination);
+            }
+        }
+
+        if (StompCommand.UNSUBSCRIBE.equals(accessor.getCommand()) && attributes != null) {
+            String topic = batchSubscriptions(attributes).remove(accessor.getSubscriptionId());
+            if (topic != null) {
+                broadcastBatcher.unsubscribed(topic);
+            }
+        }
+
+        // Also sent for sessions that just closed, possibly after the client's own DISCONNECT;
+        // the entries are removed as they are released, so the second one finds nothing.
+        if (StompCommand.DISCONNECT.equals(accessor.getCommand()) && attributes != null) {
+            Map<String, String> subscriptions = batchSubscriptions(attributes);
+            for (String subscriptionId : subscriptions.keySet()) {
+                String topic = subscriptions.remove(subscriptionId);
+                if (topic != null) {
+                    broadcastBatcher.unsubscribed(topic);
+                }
+            }
+        }
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> batchSubscriptions(Map<String, Object> attributes) {
+        return (Map<String, String>) attributes.computeIfAbsent(BATCH_SUBSCRIPTIONS_ATTRIBUTE,
+                k -> new ConcurrentHashMap<String, String>());
+    }
+}
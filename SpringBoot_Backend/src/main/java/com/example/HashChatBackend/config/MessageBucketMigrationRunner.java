@@ -0,0 +1,40 @@
+package com.example.HashChatBackend.config;
+
+import com.example.HashChatBackend.service.MessageBucketMigrationService;
+import com.example.HashChatBackend.service.MessageStoreService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Splits every room that still embeds its messages into message buckets on startup.
+// Rooms that are not migrated here are still split lazily the first time they are used.
+@Component
+@ConditionalOnProperty(name = "app.messages.migrate-on-startup", havingValue = "true")
+public class MessageBucketMigrationRunner implements ApplicationRunner {
+
+    @Autowired
+    private MessageBucketMigrationService migrationService;
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> roomIds = migrationService.findLegacyRoomIds();
+        System.out.println("Message bucket migration: " + roomIds.size() + " rooms to split");
+
+        for (String roomId : roomIds) {
+            try {
+                // Goes through the store so the room's bucket cursor stays consistent with new sends
+                messageStoreService.ensureMigrated(roomId);
+            } catch (Exception e) {
+                System.err.println("Failed to migrate messages of room " + roomId + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Message bucket migration finished");
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.HashChatBackend.config;
+
+import com.example.HashChatBackend.service.OutboundBackpressureService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * GET /actuator/websocketqueues?limit=50
+ * Outbound queue depth and drop counters of the WebSocket sessions with the deepest queues.
+ * Totals are also published as hashchat.websocket.outbound.* metrics.
+ * Not exposed by default (management.endpoints.web.exposure.include); once exposed, only
+ * admins (app.admin.emails) can read it, see SecurityConfig.
+ */
+@Component
+@Endpoint(id = "websocketqueues")
+public class OutboundBackpressureEndpoint {
+
+    @Autowired
+    private OutboundBackpressureService outboundBackpressureService;
+
+    @ReadOperation
+    public Map<String, Object> queues(@Nullable Integer limit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("policy", outboundBackpressureService.getPolicy());
+        result.put("queueCapacity", outboundBackpressureService.getQueueCapacity());
+        result.put("sessions", outboundBackpressureService.getSessionStats(limit != null ? limit : 50));
+        return result;
+    }
+}
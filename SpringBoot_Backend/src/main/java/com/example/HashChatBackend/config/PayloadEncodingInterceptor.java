@@ -0,0 +1,187 @@
+package com.example.HashChatBackend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.sockjs.transport.session.AbstractSockJsSession;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * CBOR as an alternative to JSON for STOMP payloads, chosen per connection.
+ *
+ * A client connected over a native WebSocket sends "X-Payload-Encoding: cbor" on CONNECT and
+ * from then on gets every MESSAGE frame as a binary frame with a CBOR body (native header
+ * "payload-encoding: cbor"; the STOMP content-type is application/octet-stream because that is
+ * what makes Spring send binary frames). It can send CBOR too, with content-type application/cbor.
+ * SockJS can't carry binary frames, so over SockJS the header is ignored and JSON is used.
+ *
+ * A broadcast is converted from JSON once per node, not once per subscriber: the broker hands
+ * every subscriber the same payload array, which is used as an identity cache key.
+ * Outcomes are counted in hashchat.websocket.cbor.conversions (result=converted/failed) and
+ * hashchat.websocket.cbor.sockjs (CBOR asked for over SockJS); only the first failure is logged.
+ */
+@Component
+public class PayloadEncodingInterceptor implements ChannelInterceptor {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    // Session attribute set for connections that are not SockJS
+    private static final String NATIVE_WEBSOCKET_ATTRIBUTE = "nativeWebSocket";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ObjectMapper cborMapper;
+
+    // Sessions that negotiated CBOR
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    // Cached for payloads that could not be converted, so they are not tried again per subscriber
+    private static final byte[] NOT_CONVERTIBLE = new byte[0];
+
+    // JSON payload (by identity) -> CBOR bytes, or NOT_CONVERTIBLE
+    private Cache<Object, byte[]> converted;
+
+    private Counter conversions;
+    private Counter failures;
+    private Counter sockJsRequests;
+
+    private final AtomicBoolean failureLogged = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        // Same modules and settings as the JSON mapper, CBOR output
+        cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+        converted = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(1024)
+                .build();
+        conversions = Counter.builder("hashchat.websocket.cbor.conversions").tag("result", "converted").register(meterRegistry);
+        failures = Counter.builder("hashchat.websocket.cbor.conversions").tag("result", "failed").register(meterRegistry);
+        sockJsRequests = Counter.builder("hashchat.websocket.cbor.sockjs").register(meterRegistry);
+    }
+
+    /**
+     * Converter for inbound payloads sent with content-type application/cbor.
+     */
+    public MessageConverter cborMessageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setStrictContentTypeMatch(true); // leave JSON and text payloads to the other converters
+        return converter;
+    }
+
+    /**
+     * Decorator factory that marks sessions that are not SockJS, the only ones that can take binary frames.
+     */
+    public WebSocketHandler markNativeSessions(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (!(WebSocketSessionDecorator.unwrap(session) instanceof AbstractSockJsSession)) {
+                    session.getAttributes().put(NATIVE_WEBSOCKET_ATTRIBUTE, Boolean.TRUE);
+                }
+                super.afterConnectionEstablished(session);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+
+        // Inbound: negotiation on CONNECT
+        if (accessor instanceof StompHeaderAccessor stomp && StompCommand.CONNECT.equals(stomp.getCommand())) {
+            negotiate(stomp);
+            return message;
+        }
+
+        // Outbound: re-encode MESSAGE frames for CBOR sessions
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE || !cborSessions.contains(accessor.getSessionId())) {
+            return message;
+        }
+        MimeType contentType = accessor.getContentType();
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)
+                || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        byte[] cbor = converted.get(json, this::toCbor);
+        if (cbor == NOT_CONVERTIBLE) {
+            return message; // couldn't convert, the client gets JSON in a text frame
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(message);
+        headers.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        headers.setNativeHeader("payload-encoding", "cbor");
+        return MessageBuilder.createMessage(cbor, headers.getMessageHeaders());
+    }
+
+    private void negotiate(StompHeaderAccessor accessor) {
+        if (!"cbor".equalsIgnoreCase(accessor.getFirstNativeHeader("X-Payload-Encoding"))) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_WEBSOCKET_ATTRIBUTE))) {
+            cborSessions.add(accessor.getSessionId());
+        } else {
+            sockJsRequests.increment(); // the client gets JSON
+        }
+    }
+
+    private byte[] toCbor(Object json) {
+        try {
+            byte[] cbor = cborMapper.writeValueAsBytes(objectMapper.readTree((byte[]) json));
+            conversions.increment();
+            return cbor;
+        } catch (Exception e) {
+            failures.increment();
+            if (failureLogged.compareAndSet(false, true)) {
+                System.err.println("Failed to convert payload to CBOR, sending JSON (further failures are only counted): " + e.getMessage());
+            }
+            return NOT_CONVERTIBLE;
+        }
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+}
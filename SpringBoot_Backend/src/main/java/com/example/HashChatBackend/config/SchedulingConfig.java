@@ -0,0 +1,21 @@
+package com.example.HashChatBackend.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// Background jobs (@Scheduled) get their own scheduler. Without a bean named "taskScheduler"
+// they would run on the WebSocket broker's scheduler and could delay its heartbeats.
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("hashchat-scheduled-");
+        return scheduler;
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.HashChatBackend.config;
 
 import com.example.HashChatBackend.model.JwtRequestFilter;
+import com.example.HashChatBackend.service.AdminService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -25,6 +27,9 @@ public class SecurityConfig {
     @Autowired
     private JwtRequestFilter jwtRequestFilter;
 
+    @Autowired
+    private AdminService adminService;
+
     /**
      * Configures the security filter chain for HTTP requests.
      * Disables CSRF, authorizes requests, and adds the JWT filter.
@@ -45,6 +50,10 @@ public class SecurityConfig {
                         .requestMatchers("/api/v1/auth/**").permitAll()
                         // Allow WebSocket connection endpoint without authentication
                         .requestMatchers("/chat/**").permitAll() // Allow all paths under /chat for WebSocket
+                        .requestMatchers("/chat-ws").permitAll() // Native WebSocket endpoint, authenticated on STOMP CONNECT
+                        // Per-session queue stats (session ids, when exposed at all): admins only (app.admin.emails)
+                        .requestMatchers("/actuator/websocketqueues/**").access((authentication, context) ->
+                                new AuthorizationDecision(adminService.isAdmin(authentication.get())))
                         // All other requests require authentication
                         .anyRequest().authenticated()
                 )
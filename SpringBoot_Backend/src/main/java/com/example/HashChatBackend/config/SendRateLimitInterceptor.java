@@ -0,0 +1,167 @@
+package com.example.HashChatBackend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket rate limit for STOMP SEND frames, per logged-in user (all their tabs together)
+ * or per session for guests.
+ *
+ * Each bucket is a single AtomicLong holding the time at which it would be full again
+ * (GCRA, the "virtual scheduling" form of a token bucket), updated with a CAS loop, so a send
+ * costs one map lookup and one CAS and there are no locks. Buckets that have refilled are
+ * equal to new ones and are dropped by a periodic sweep, so memory stays proportional to the
+ * senders that are active right now.
+ * A send over the limit is rejected with an exception, which Spring turns into a STOMP ERROR
+ * frame for that client; the message never reaches the controller or the broker.
+ */
+@Component
+public class SendRateLimitInterceptor implements ChannelInterceptor {
+
+    enum Kind { ROOM, GLOBAL, OTHER }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.websocket.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.websocket.rate-limit.room.per-second:5}")
+    private double roomPerSecond;
+
+    @Value("${app.websocket.rate-limit.room.burst:10}")
+    private int roomBurst;
+
+    @Value("${app.websocket.rate-limit.global.per-second:1}")
+    private double globalPerSecond;
+
+    @Value("${app.websocket.rate-limit.global.burst:5}")
+    private int globalBurst;
+
+    @Value("${app.websocket.rate-limit.other.per-second:10}")
+    private double otherPerSecond;
+
+    @Value("${app.websocket.rate-limit.other.burst:20}")
+    private int otherBurst;
+
+    private static class Limit {
+        private final long intervalNanos; // time to earn one token
+        private final long burstNanos; // how far ahead of now a bucket may run
+
+        Limit(double perSecond, int burst) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.burstNanos = intervalNanos * Math.max(0, burst - 1);
+        }
+    }
+
+    private final Map<Kind, Limit> limits = new EnumMap<>(Kind.class);
+
+    // Kind -> (user or session -> time at which the bucket is full again, in System.nanoTime)
+    private final Map<Kind, Map<String, AtomicLong>> buckets = new EnumMap<>(Kind.class);
+
+    private final Map<Kind, Counter> throttled = new EnumMap<>(Kind.class);
+
+    @PostConstruct
+    public void init() {
+        limits.put(Kind.ROOM, new Limit(roomPerSecond, roomBurst));
+        limits.put(Kind.GLOBAL, new Limit(globalPerSecond, globalBurst));
+        limits.put(Kind.OTHER, new Limit(otherPerSecond, otherBurst));
+        for (Kind kind : Kind.values()) {
+            Map<String, AtomicLong> kindBuckets = new ConcurrentHashMap<>();
+            buckets.put(kind, kindBuckets);
+            String tag = kind.name().toLowerCase();
+            throttled.put(kind, Counter.builder("hashchat.websocket.throttled").tag("destination", tag).register(meterRegistry));
+            Gauge.builder("hashchat.websocket.rate-limit.buckets", kindBuckets, Map::size).tag("destination", tag).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (!enabled || accessor == null || !StompCommand.SEND.equals(accessor.getCommand())) {
+            return message;
+        }
+        Kind kind = kindOf(accessor.getDestination());
+        Principal user = accessor.getUser();
+        String key = user != null ? user.getName() : accessor.getSessionId();
+        if (key == null) {
+            return message;
+        }
+
+        if (!tryAcquire(buckets.get(kind).computeIfAbsent(key, k -> new AtomicLong()), limits.get(kind))) {
+            throttled.get(kind).increment();
+            throw new MessageDeliveryException(message,
+                    "Rate limit exceeded: too many messages to " + accessor.getDestination() + ", slow down.");
+        }
+        return message;
+    }
+
+    private static boolean tryAcquire(AtomicLong bucket, Limit limit) {
+        long now = System.nanoTime();
+        while (true) {
+            long fullAt = bucket.get();
+            long start = fullAt == 0 || fullAt - now < 0 ? now : fullAt; // an empty/refilled bucket starts at now
+            if (start - now > limit.burstNanos) {
+                return false; // no token left
+            }
+            if (bucket.compareAndSet(fullAt, start + limit.intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private static Kind kindOf(String destination) {
+        if (destination == null) {
+            return Kind.OTHER;
+        }
+        if (destination.startsWith("/app/sendMessage/")) {
+            return Kind.ROOM;
+        }
+        if (destination.equals("/app/global/sendMessage")) {
+            return Kind.GLOBAL;
+        }
+        return Kind.OTHER;
+    }
+
+    // Refilled buckets behave exactly like missing ones, so they can go (a send racing with
+    // the removal may get one token for free, which is harmless)
+    @Scheduled(fixedDelayString = "${app.websocket.rate-limit.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        for (Map<String, AtomicLong> kindBuckets : buckets.values()) {
+            kindBuckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        // Guest buckets are keyed by session; a user's bucket is shared with their other tabs
+        if (event.getUser() == null) {
+            for (Map<String, AtomicLong> kindBuckets : buckets.values()) {
+                kindBuckets.remove(event.getSessionId());
+            }
+        }
+    }
+}
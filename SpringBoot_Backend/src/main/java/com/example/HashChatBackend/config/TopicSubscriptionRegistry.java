@@ -0,0 +1,167 @@
+package com.example.HashChatBackend.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Subscription registry of the simple broker, built for our fixed topic shapes
+ * (/topic/room/{roomId}, /topic/room/{roomId}/activeUsers, /topic/global, /topic/profileUpdates).
+ *
+ * Those destinations have no wildcards, so subscribers are kept per destination in a hash map
+ * instead of being matched against every subscription. Like DefaultSubscriptionRegistry's
+ * destination cache, a broadcast gets a ready-made copy of the destination's subscribers with
+ * one map lookup; here the copy is dropped on a change and built again by the next lookup,
+ * instead of being copied on every change, so a session joining /topic/global doesn't copy
+ * all of its subscribers.
+ * Pattern subscriptions (e.g. /topic/room/*) and, once a selector header name is set,
+ * subscriptions with a selector expression, neither of which the clients use, are handed to
+ * Spring's DefaultSubscriptionRegistry, which supports both. As with the simple broker's default
+ * setup, selector headers are ignored while no selector header name is set.
+ */
+public class TopicSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    // Header holding a subscription's selector expression, null while selectors are off
+    private volatile String selectorHeaderName;
+
+    // destination -> (sessionId -> subscriptionIds). Only changed inside compute() for the
+    // destination, which also drops or builds its entry in broadcastCache
+    private final Map<String, LinkedMultiValueMap<String, String>> destinations = new ConcurrentHashMap<>();
+
+    // destination -> copy of its subscribers handed to the broker, which only reads it
+    private final Map<String, LinkedMultiValueMap<String, String>> broadcastCache = new ConcurrentHashMap<>();
+
+    // sessionId -> (subscriptionId -> subscription), for unsubscribe and disconnect
+    private final Map<String, Map<String, Subscription>> sessions = new ConcurrentHashMap<>();
+
+    private final DefaultSubscriptionRegistry delegate = new DefaultSubscriptionRegistry();
+    private final AtomicInteger delegatedSubscriptions = new AtomicInteger();
+
+    private static final MultiValueMap<String, String> NONE =
+            CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+    private record Subscription(String destination, boolean delegated) {
+    }
+
+    /**
+     * Same as SimpleBrokerMessageHandler.setSelectorHeaderName, which only passes it on to a
+     * DefaultSubscriptionRegistry.
+     *
+     * @param selectorHeaderName e.g. "selector", or null to ignore selector headers.
+     */
+    public void setSelectorHeaderName(String selectorHeaderName) {
+        this.selectorHeaderName = selectorHeaderName;
+        delegate.setSelectorHeaderName(selectorHeaderName);
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination, Message<?> message) {
+        String selectorHeader = selectorHeaderName;
+        boolean delegated = isPattern(destination) || (selectorHeader != null
+                && SimpMessageHeaderAccessor.getFirstNativeHeader(selectorHeader, message.getHeaders()) != null);
+        if (delegated) {
+            delegate.registerSubscription(message);
+            delegatedSubscriptions.incrementAndGet();
+        } else {
+            destinations.compute(destination, (key, subscribers) -> {
+                LinkedMultiValueMap<String, String> target = subscribers != null ? subscribers : new LinkedMultiValueMap<>();
+                target.add(sessionId, subscriptionId);
+                broadcastCache.remove(key);
+                return target;
+            });
+        }
+        sessions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+                .put(subscriptionId, new Subscription(destination, delegated));
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, Subscription> subscriptions = sessions.get(sessionId);
+        Subscription subscription = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (subscription == null) {
+            return;
+        }
+        if (subscription.delegated()) {
+            delegate.unregisterSubscription(message);
+            delegatedSubscriptions.decrementAndGet();
+        } else {
+            removeFromDestination(subscription.destination(), sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, Subscription> subscriptions = sessions.remove(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        boolean hadDelegated = false;
+        for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+            if (entry.getValue().delegated()) {
+                hadDelegated = true;
+                delegatedSubscriptions.decrementAndGet();
+            } else {
+                removeFromDestination(entry.getValue().destination(), sessionId, entry.getKey());
+            }
+        }
+        if (hadDelegated) {
+            delegate.unregisterAllSubscriptions(sessionId);
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        MultiValueMap<String, String> exact = broadcastCache.get(destination);
+        if (exact == null) {
+            exact = buildBroadcast(destination);
+        }
+        if (delegatedSubscriptions.get() == 0) {
+            return exact; // the usual case: one map lookup, no copying
+        }
+        MultiValueMap<String, String> matched = delegate.findSubscriptions(message);
+        if (matched.isEmpty()) {
+            return exact;
+        }
+        LinkedMultiValueMap<String, String> merged = new LinkedMultiValueMap<>();
+        exact.forEach(merged::addAll);
+        matched.forEach(merged::addAll);
+        return merged;
+    }
+
+    private MultiValueMap<String, String> buildBroadcast(String destination) {
+        AtomicReference<MultiValueMap<String, String>> built = new AtomicReference<>(NONE);
+        destinations.computeIfPresent(destination, (key, subscribers) -> {
+            // deepCopy allocates the lists next to the map's entries, which the broadcast walks
+            LinkedMultiValueMap<String, String> copy = subscribers.deepCopy();
+            broadcastCache.put(key, copy);
+            built.set(copy);
+            return subscribers;
+        });
+        return built.get();
+    }
+
+    private void removeFromDestination(String destination, String sessionId, String subscriptionId) {
+        destinations.computeIfPresent(destination, (key, subscribers) -> {
+            List<String> ids = subscribers.get(sessionId);
+            if (ids != null && ids.remove(subscriptionId) && ids.isEmpty()) {
+                subscribers.remove(sessionId);
+            }
+            broadcastCache.remove(key);
+            return subscribers.isEmpty() ? null : subscribers; // drop rooms nobody listens to
+        });
+    }
+
+    private static boolean isPattern(String destination) {
+        return destination.indexOf('*') >= 0 || destination.indexOf('{') >= 0 || destination.indexOf('?') >= 0;
+    }
+}
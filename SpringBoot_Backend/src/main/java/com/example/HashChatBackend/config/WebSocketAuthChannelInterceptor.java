@@ -1,92 +1,72 @@
 package com.example.HashChatBackend.config;
 
-import com.example.HashChatBackend.utils.JwtUtil;
+import com.example.HashChatBackend.service.AuthIdentityCache;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.core.Ordered;
-import org.springframework.core.annotation.Order;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
 
 
-// is the custom interceptor that reads the JWT from the WebSocket CONNECT headers,
-// validates it, and sets the Principal for the WebSocket session.
+// The inbound auth stage for STOMP: reads the JWT from the CONNECT headers and sets the
+// Principal for the WebSocket session (once per connection, through AuthIdentityCache),
+// and keeps guests out of private rooms on SUBSCRIBE.
 
-@Configuration
-@Order(Ordered.HIGHEST_PRECEDENCE + 99)
+@Component
 public class WebSocketAuthChannelInterceptor implements ChannelInterceptor {
 
     @Autowired
-    private JwtUtil jwtUtil;
-
-    @Autowired
-    private UserDetailsService userDetailsService;
+    private AuthIdentityCache authIdentityCache;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
 
-        // Only process CONNECT commands for authentication
+        // 1. Handle CONNECTION (Authentication)
         if (StompCommand.CONNECT.equals(accessor.getCommand())) {
-            String token = accessor.getFirstNativeHeader("Authorization"); // Get Authorization header
+            boolean isGuestMode = "true".equalsIgnoreCase(accessor.getFirstNativeHeader("X-Guest-Mode"));
 
-            if (token == null || !token.startsWith("Bearer ")) {
-                System.err.println("WebSocket CONNECT: No Authorization header or invalid format. Rejecting connection.");
-                // Reject connection if token is missing or malformed
-                throw new MessageDeliveryException("Unauthorized: Missing or invalid Authorization header.");
+            // A. Guest Mode: Allow connection, but User Principal remains NULL
+            if (isGuestMode) {
+                System.out.println("WebSocket CONNECT: Guest user connecting (Session ID: " + accessor.getSessionId() + ")");
+                return message;
             }
 
-            token = token.substring(7); // Remove "Bearer " prefix
-            try {
-                String email = jwtUtil.getEmailFromToken(token);
-
-                if (email == null) {
-                    System.err.println("WebSocket CONNECT: Email could not be extracted from token. Rejecting connection.");
-                    throw new MessageDeliveryException("Unauthorized: Invalid JWT token (email missing).");
-                }
-
-                UserDetails userDetails = null;
-                try {
-                    userDetails = userDetailsService.loadUserByUsername(email);
-                } catch (UsernameNotFoundException e) {
-                    System.err.println("WebSocket CONNECT: User not found for email '" + email + "'. Rejecting connection.");
-                    throw new MessageDeliveryException("Unauthorized: User not found.");
-                }
+            // B. Authenticated Mode: Validate Token
+            String bearerToken = accessor.getFirstNativeHeader("Authorization");
+            Authentication authentication = null;
+            if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
+                authentication = authIdentityCache.authenticate(bearerToken.substring(7));
+            }
+            if (authentication != null) {
+                accessor.setUser(authentication);
+                System.out.println("WebSocket Authenticated User: " + authentication.getName());
+            } else {
+                System.err.println("WebSocket CONNECT: Invalid or missing JWT");
+                // Optional: Throw exception to reject connection immediately
+            }
+        }
 
-                if (jwtUtil.validateToken(token, userDetails)) {
-                    // Create an authenticated token
-                    Authentication authentication = new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities());
+        // 2. Handle SUBSCRIPTION (Security Gatekeeper)
+        if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            String destination = accessor.getDestination();
+            boolean isGuest = (accessor.getUser() == null); // Guests have no Authentication object
 
-                    // Set the authenticated user in the WebSocket session
-                    accessor.setUser(authentication);
-                    // Also set in SecurityContextHolder (optional but good practice)
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                    System.out.println("WebSocket CONNECT: User authenticated: " + email);
-                } else {
-                    System.err.println("WebSocket CONNECT: JWT validation failed for token: " + token + ". Rejecting connection.");
-                    throw new MessageDeliveryException("Unauthorized: Invalid JWT token.");
-                }
-            } catch (MessageDeliveryException e) {
-                // Re-throw MessageDeliveryException directly
-                throw e;
-            } catch (Exception e) {
-                System.err.println("WebSocket CONNECT: Unexpected error during JWT authentication: " + e.getMessage() + ". Rejecting connection.");
-                // Catch any other unexpected exceptions and reject connection
-                throw new MessageDeliveryException("Unauthorized: Authentication error during WebSocket handshake.");
+            // BLOCK: If user is a Guest AND trying to access a private room (or its resume replies)
+            if (isGuest && destination != null
+                    && (destination.startsWith("/topic/room/") || destination.startsWith("/app/room/"))) {
+                System.err.println("SECURITY ALERT: Guest tried to subscribe to private room: " + destination);
+                throw new IllegalArgumentException("Guests are not allowed in private rooms.");
             }
         }
-        return message; // Allow the message to proceed if not a CONNECT command or if authenticated
+
+        return message;
     }
-}
\ No newline at end of file
+}
@@ -1,25 +1,23 @@
 package com.example.HashChatBackend.config;
 
-import com.example.HashChatBackend.service.CustomUserDetailsService;
-import com.example.HashChatBackend.utils.JwtUtil;
+import com.example.HashChatBackend.service.IdleSessionReaper;
+import com.example.HashChatBackend.service.OutboundBackpressureService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.messaging.simp.stomp.StompCommand;
-import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
-import org.springframework.messaging.support.MessageHeaderAccessor;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 import java.util.List;
 
@@ -30,85 +28,137 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Value("${app.frontend.url}")
     private String frontendUrl;
 
+    // What the server sends / expects from clients (ms), negotiated per connection on CONNECT
+    @Value("${app.websocket.heartbeat.server-ms:10000}")
+    private long heartbeatServerMs;
+
+    @Value("${app.websocket.heartbeat.client-ms:10000}")
+    private long heartbeatClientMs;
+
+    // Own scheduler for broker heartbeats, so they don't queue behind @Scheduled jobs
+    @Bean
+    public ThreadPoolTaskScheduler brokerHeartbeatScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("ws-heartbeat-");
+        return scheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic"); // Enables simple broker for /topic destinations
+        config.enableSimpleBroker("/topic") // Enables simple broker for /topic destinations
+                // Heartbeats both ways; a client that misses them for 3 intervals is disconnected by the broker
+                .setHeartbeatValue(new long[]{heartbeatServerMs, heartbeatClientMs})
+                .setTaskScheduler(brokerHeartbeatScheduler());
         config.setApplicationDestinationPrefixes("/app");
         // Client sends to /app/chat, /app/global/sendMessage, etc.
         // Server publishes to /topic/room/{roomId}, /topic/global, etc.
     }
 
+    // The simple broker's registry can't be set through MessageBrokerRegistry, so it is swapped
+    // for TopicSubscriptionRegistry (hash lookup per destination) before the broker starts.
+    // Static because a BeanPostProcessor has to exist before the other beans of this class.
+    @Bean
+    public static BeanPostProcessor topicSubscriptionRegistryInstaller() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler broker) {
+                    // Selectors are off, the simple broker's default. Enabling them through
+                    // enableSimpleBroker().setSelectorHeaderName() would only reach a
+                    // DefaultSubscriptionRegistry, so the same name has to be set here too
+                    broker.setSubscriptionRegistry(new TopicSubscriptionRegistry());
+                }
+                return bean;
+            }
+        };
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/chat") // WebSocket connection endpoint
                 .setAllowedOrigins(frontendUrl) // Allow frontend origin
                 .withSockJS();
+        // Plain STOMP over WebSocket for clients that don't need the SockJS fallbacks:
+        // no SockJS framing, info request or SockJS heartbeats. Same channels, interceptors and broker.
+        registry.addEndpoint("/chat-ws")
+                .setAllowedOrigins(frontendUrl);
+    }
+
+    @Value("${app.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${app.websocket.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.send-buffer-size-limit:262144}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.time-to-first-message-ms:10000}")
+    private int timeToFirstMessageMs;
+
+    // Container limits for native WebSocket sessions (SockJS's websocket transport included)
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer(
+            @Value("${app.websocket.container.max-text-buffer:65536}") int maxTextBuffer,
+            @Value("${app.websocket.container.max-binary-buffer:65536}") int maxBinaryBuffer,
+            @Value("${app.websocket.container.async-send-timeout-ms:5000}") long asyncSendTimeoutMs,
+            @Value("${app.websocket.container.max-idle-ms:300000}") long maxIdleMs) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxTextBuffer);
+        container.setMaxBinaryMessageBufferSize(maxBinaryBuffer); // CBOR frames (see PayloadEncodingInterceptor)
+        container.setAsyncSendTimeout(asyncSendTimeoutMs); // a write stuck on a dead client fails instead of hanging
+        container.setMaxSessionIdleTimeout(maxIdleMs);
+        return container;
     }
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private OutboundBackpressureService outboundBackpressureService;
+
+    @Autowired
+    private PayloadEncodingInterceptor payloadEncodingInterceptor;
 
     @Autowired
-    private CustomUserDetailsService userDetailsService;
+    private IdleSessionReaper idleSessionReaper;
 
+    // Every session gets a bounded outbound queue, so a slow client can't hold up the others
     @Override
-    public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(new ChannelInterceptor() {
-            @Override
-            public Message<?> preSend(Message<?> message, MessageChannel channel) {
-                StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
-
-                // 1. Handle CONNECTION (Authentication)
-                if (StompCommand.CONNECT.equals(accessor.getCommand())) {
-                    List<String> authorizationHeaders = accessor.getNativeHeader("Authorization");
-                    List<String> guestHeaders = accessor.getNativeHeader("X-Guest-Mode");
-                    boolean isGuestMode = guestHeaders != null && !guestHeaders.isEmpty()
-                            && "true".equalsIgnoreCase(guestHeaders.getFirst());
-
-                    String token = null;
-                    if (authorizationHeaders != null && !authorizationHeaders.isEmpty()) {
-                        String bearerToken = authorizationHeaders.getFirst();
-                        if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
-                            token = bearerToken.substring(7);
-                        }
-                    }
-
-                    // A. Guest Mode: Allow connection, but User Principal remains NULL
-                    if (isGuestMode) {
-                        System.out.println("WebSocket CONNECT: Guest user connecting (Session ID: " + accessor.getSessionId() + ")");
-                        return message;
-                    }
-
-                    // B. Authenticated Mode: Validate Token
-                    if (token != null && jwtUtil.validateToken(token)) {
-                        String userEmail = jwtUtil.getEmailFromToken(token);
-                        UserDetails userDetails = userDetailsService.loadUserByUsername(userEmail);
-                        Authentication authentication = new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities()
-                        );
-                        accessor.setUser(authentication);
-                        System.out.println("WebSocket Authenticated User: " + userEmail);
-                    } else {
-                        System.err.println("WebSocket CONNECT: Invalid or missing JWT");
-                        // Optional: Throw exception to reject connection immediately
-                    }
-                }
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(messageSizeLimit) // largest inbound STOMP frame
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setTimeToFirstMessage(timeToFirstMessageMs); // sockets that never send CONNECT are closed
+        registration.addDecoratorFactory(outboundBackpressureService::decorate);
+        registration.addDecoratorFactory(payloadEncodingInterceptor::markNativeSessions);
+        registration.addDecoratorFactory(idleSessionReaper::decorate);
+    }
 
-                // 2. Handle SUBSCRIPTION (Security Gatekeeper) -- THIS WAS MISSING
-                if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
-                    String destination = accessor.getDestination();
-                    Authentication user = (Authentication) accessor.getUser();
-                    boolean isGuest = (user == null); // Guests have no Authentication object
-
-                    // BLOCK: If user is a Guest AND trying to access a private room
-                    if (isGuest && destination != null && destination.startsWith("/topic/room/")) {
-                        System.err.println("SECURITY ALERT: Guest tried to subscribe to private room: " + destination);
-                        throw new IllegalArgumentException("Guests are not allowed in private rooms.");
-                    }
-                }
+    // CBOR payloads (content-type application/cbor) next to the default JSON/String/byte[] converters
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(payloadEncodingInterceptor.cborMessageConverter());
+        return true;
+    }
 
-                return message;
-            }
-        });
+    // MESSAGE frames for sessions that negotiated CBOR are re-encoded on the way out
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(payloadEncodingInterceptor);
+    }
+
+    @Autowired
+    private SendRateLimitInterceptor sendRateLimitInterceptor;
+
+    @Autowired
+    private BatchSubscriptionInterceptor batchSubscriptionInterceptor;
+
+    @Autowired
+    private WebSocketAuthChannelInterceptor webSocketAuthChannelInterceptor;
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(idleSessionReaper.activityInterceptor()); // every inbound frame counts as activity
+        registration.interceptors(webSocketAuthChannelInterceptor, // CONNECT authentication, guest checks on SUBSCRIBE
+                sendRateLimitInterceptor, batchSubscriptionInterceptor, payloadEncodingInterceptor); // after the security checks, which see the original destination
     }
 }
@@ -1,6 +1,8 @@
 package com.example.HashChatBackend.controllers;
 
 import com.example.HashChatBackend.Exceptions.EmailNotVerifiedException;
+import com.example.HashChatBackend.model.AccountDeletionJob;
+import com.example.HashChatBackend.service.AccountDeletionService;
 import com.example.HashChatBackend.service.AuthService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -10,6 +12,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -20,6 +23,9 @@ public class AuthController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private AccountDeletionService accountDeletionService;
+
     /**
      * Handles user signup requests.
      *
@@ -119,9 +125,12 @@ public class AuthController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Password is required for account deletion."));
             }
 
-            // Delete user account
-            String message = authService.deleteUser(email, password);
-            return ResponseEntity.ok(Map.of("message", message));
+            // Queue the deletion, it runs in the background (poll GET /delete-account/{jobId})
+            AccountDeletionJob job = authService.deleteUser(email, password);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                    "message", "Account deletion started.",
+                    "jobId", job.getId(),
+                    "status", job.getStatus()));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
@@ -129,4 +138,23 @@ public class AuthController {
                     .body(Map.of("error", "An unexpected error occurred during account deletion."));
         }
     }
+
+    //progress of an account deletion. The account may already be gone by the time the client asks,
+    //so this doesn't require a valid token; it only returns the job's state and progress, nothing
+    //about the account (no email, no error details, those stay in the server log)
+    @GetMapping("/delete-account/{jobId}")
+    public ResponseEntity<?> getDeleteAccountStatus(@PathVariable String jobId) {
+        AccountDeletionJob job = accountDeletionService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Deletion job not found."));
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", job.getId());
+        status.put("status", job.getStatus());
+        status.put("phase", job.getPhase());
+        status.put("progressDone", job.getProgressDone());
+        status.put("progressTotal", job.getProgressTotal());
+        return ResponseEntity.ok(status);
+    }
 }
@@ -2,14 +2,24 @@ package com.example.HashChatBackend.controllers;
 
 
 import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageHistoryPage;
 import com.example.HashChatBackend.model.MessageRequest;
 import com.example.HashChatBackend.model.Room;
 import com.example.HashChatBackend.repository.UserRepo;
+import com.example.HashChatBackend.service.BroadcastBatcher;
+import com.example.HashChatBackend.service.ClusterFanout;
+import com.example.HashChatBackend.service.MessageJournalService;
+import com.example.HashChatBackend.service.MessageSearchService;
+import com.example.HashChatBackend.service.MessageStoreService;
+import com.example.HashChatBackend.service.MessageWriteBehindService;
+import com.example.HashChatBackend.service.RecentMessageCache;
 import com.example.HashChatBackend.service.RoomService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -25,14 +35,37 @@ public class ChatController {
     @Autowired
     private UserRepo userRepository;
 
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private MessageJournalService messageJournalService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private ClusterFanout clusterFanout; // broadcasts reach subscribers on every backend node
+
+    @Autowired
+    private BroadcastBatcher broadcastBatcher;
+
+    @Value("${app.messages.resume.max-messages:200}")
+    private int maxResumeMessages;
+
     //for sending and receiving messages
     @MessageMapping("/sendMessage/{roomId}") // /app/sendMessage/roomId
-    @SendTo("/topic/room/{roomId}") //subscribe
-    public Message sendMessage(
+    public void sendMessage(
             @DestinationVariable String roomId,
             @RequestBody MessageRequest request
     ){
-        Room room = roomService.getRoomByRoomId(request.getRoomId());
+        Room room = roomService.getRoomByRoomId(request.getRoomId()); // memory lookup, see RoomService
 
         Message message = new Message();
 
@@ -42,13 +75,39 @@ public class ChatController {
         message.setImageUrl(request.getImageUrl());
         message.setTimeStamp(LocalDateTime.now());
 
-        if(room!=null){
-            room.getMessages().add(message);
-            roomService.saveRoom(room);
-        }else{
+        if(room==null){
             throw new RuntimeException("Room not found");
         }
 
-        return message;
+        // Assign messageId + seq in memory, broadcast (subscribers: /topic/room/roomId), then hand
+        // the message to the write-behind buffer so delivery latency doesn't include the MongoDB write.
+        // In journal mode the message is appended to the local journal before the broadcast instead,
+        // and MongoDB is written from the journal.
+        MessageStoreService.PendingMessage pending = messageStoreService.place(room.getRoomId(), message);
+        if (messageJournalService.isEnabled()) {
+            messageJournalService.append(pending);
+        }
+        recentMessageCache.add(room.getRoomId(), message);
+        clusterFanout.publish("/topic/room/" + roomId, message);
+        broadcastBatcher.add("/topic/room/" + roomId, message); // for clients that accept batches
+        if (!messageJournalService.isEnabled()) {
+            messageWriteBehindService.enqueue(pending);
+        }
+        messageSearchService.index(room.getRoomId(), message);
+    }
+
+    //resume after a reconnect: the client first subscribes to /topic/room/roomId again, then
+    //subscribes to /app/room/roomId/resume with a "lastSeq" header (seq of the last message it has).
+    //The reply goes only to that session and holds the messages it missed; the client drops
+    //live messages it already got this way by comparing seq.
+    @SubscribeMapping("/room/{roomId}/resume")
+    public MessageHistoryPage resume(
+            @DestinationVariable String roomId,
+            @Header(name = "lastSeq", required = false) Long lastSeq
+    ){
+        if(!roomService.roomExists(roomId)){
+            throw new RuntimeException("Room not found");
+        }
+        return recentMessageCache.getMessagesAfter(roomId, lastSeq != null ? lastSeq : 0, maxResumeMessages);
     }
 }
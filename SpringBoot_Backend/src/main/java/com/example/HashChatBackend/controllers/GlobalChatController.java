@@ -2,11 +2,15 @@ package com.example.HashChatBackend.controllers;
 
 import com.example.HashChatBackend.model.Message;
 import com.example.HashChatBackend.model.MessageRequest;
+import com.example.HashChatBackend.service.BroadcastBatcher;
+import com.example.HashChatBackend.service.ClusterFanout;
+import com.example.HashChatBackend.service.GlobalChatHistory;
+import com.example.HashChatBackend.utils.MessageIdGenerator;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
@@ -21,21 +25,35 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Controller for handling global chat messages.
  * Global chat is accessible to both authenticated users and guest users.
- * Messages are only persisted in memory while users are connected.
+ * Nothing is written to a database: the last messages are kept in memory (GlobalChatHistory)
+ * so newcomers see the recent conversation, and are lost on restart.
  */
 @Controller
 public class GlobalChatController {
 
+    @Autowired
+    private MessageIdGenerator messageIdGenerator;
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    @Autowired
+    private BroadcastBatcher broadcastBatcher;
+
+    @Autowired
+    private GlobalChatHistory globalChatHistory;
+
     /**
      * Handle global chat messages from both guests and authenticated users.
      * The message itself contains all necessary sender info (name, photo).
+     * Broadcast to /topic/global on every backend node.
      */
     @MessageMapping("/global/sendMessage")
-    @SendTo("/topic/global")
-    public Message sendGlobalMessage(@RequestBody MessageRequest request) {
+    public void sendGlobalMessage(@RequestBody MessageRequest request) {
 
         // Create message object to broadcast
         Message message = new Message();
+        message.setMessageId(messageIdGenerator.nextId()); // lets clients drop duplicates
         message.setSender(request.getSender());
         message.setSenderId(request.getSenderId());
         message.setContent(request.getContent());
@@ -43,6 +61,17 @@ public class GlobalChatController {
         message.setImageUrl(request.getImageUrl());
         message.setTimeStamp(LocalDateTime.now());
 
-        return message;
+        globalChatHistory.append(message); // also gives the message its Seq
+        clusterFanout.publish("/topic/global", message);
+        broadcastBatcher.add("/topic/global", message); // for clients that accept batches
+    }
+
+    /**
+     * Recent global messages for a client that just joined: it subscribes to
+     * /app/global/history and gets one reply (oldest first) on that subscription.
+     */
+    @SubscribeMapping("/global/history")
+    public List<Message> getGlobalHistory() {
+        return globalChatHistory.getRecent();
     }
-}
\ No newline at end of file
+}
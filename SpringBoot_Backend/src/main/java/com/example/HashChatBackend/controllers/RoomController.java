@@ -1,12 +1,19 @@
 package com.example.HashChatBackend.controllers;
 
 import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import com.example.HashChatBackend.model.MessageSearchPage;
 import com.example.HashChatBackend.model.Room;
-import com.example.HashChatBackend.repository.RoomRepository;
+import com.example.HashChatBackend.model.RoomRetentionRequest;
+import com.example.HashChatBackend.service.AdminService;
+import com.example.HashChatBackend.service.MessageRetentionService;
+import com.example.HashChatBackend.service.MessageSearchService;
+import com.example.HashChatBackend.service.RecentMessageCache;
 import com.example.HashChatBackend.service.RoomService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -16,15 +23,28 @@ import java.util.List;
 //@CrossOrigin("http://localhost:5173")
 public class RoomController {
 
+    private static final int MAX_HISTORY_LIMIT = 100;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
     @Autowired
-    private RoomRepository roomRepository;
+    private MessageRetentionService messageRetentionService;
 
+    @Autowired
+    private AdminService adminService;
 
     //create room
     @PostMapping
     public ResponseEntity<?> createRoom(@RequestBody String roomId) {
 
-        if (roomRepository.findByRoomId(roomId) != null) {
+        if (roomService.roomExists(roomId)) {
             //room is already there
             return ResponseEntity.badRequest().body("Room already exists!");
 
@@ -32,9 +52,7 @@ public class RoomController {
 
 
         //create new room
-        Room room = new Room();
-        room.setRoomId(roomId);
-        Room savedRoom = roomRepository.save(room);
+        Room room = roomService.createRoom(roomId);
         return ResponseEntity.status(HttpStatus.CREATED).body(room);
 
 
@@ -47,7 +65,7 @@ public class RoomController {
             @PathVariable String roomId
     ) {
 
-        Room room = roomRepository.findByRoomId(roomId);
+        Room room = roomService.getRoomByRoomId(roomId);
         if (room == null) {
             return ResponseEntity.badRequest()
                     .body("Room not found!!");
@@ -65,20 +83,82 @@ public class RoomController {
             @RequestParam(value = "page", defaultValue = "0", required = false) int page,
             @RequestParam(value = "size", defaultValue = "20", required = false) int size
     ) {
-        Room room = roomRepository.findByRoomId(roomId);
-        if (room == null) {
+        if (!roomService.roomExists(roomId)) {
             return ResponseEntity.badRequest().build()
                     ;
         }
         //get messages :
-        //pagination
-        List<Message> messages = room.getMessages();
-        int start = Math.max(0, messages.size() - (page + 1) * size);
-        int end = Math.min(messages.size(), start + size);
-        List<Message> paginatedMessages = messages.subList(start, end);
+        //pagination, page 0 = newest messages. Served from memory when the page is cached,
+        //otherwise the history cursors are followed back to the page
+        List<Message> paginatedMessages = recentMessageCache.getMessagesPage(roomId, page, size);
         return ResponseEntity.ok(paginatedMessages);
 
     }
 
+    //get messages of room using a cursor
+    //  /api/v1/rooms/{roomId}/history?limit=20             -> newest messages
+    //  /api/v1/rooms/{roomId}/history?before=120&limit=20  -> the 20 messages before seq 120
+    // pass nextCursor of the response as "before" to load the next (older) page
+    @GetMapping("/{roomId}/history")
+    public ResponseEntity<?> getMessageHistory(
+            @PathVariable String roomId,
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "limit", defaultValue = "20", required = false) int limit
+    ) {
+        if (!roomService.roomExists(roomId)) {
+            return ResponseEntity.badRequest().body("Room not found!!");
+        }
+        if (limit < 1 || limit > MAX_HISTORY_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_HISTORY_LIMIT);
+        }
+
+        MessageHistoryPage historyPage = recentMessageCache.getMessagesBefore(roomId, before, limit);
+        return ResponseEntity.ok(historyPage);
+    }
 
+    //search messages of room
+    //  /api/v1/rooms/{roomId}/search?q=hello world     -> messages containing both words
+    //  /api/v1/rooms/{roomId}/search?q="see you soon"   -> the exact phrase
+    //  /api/v1/rooms/{roomId}/search?q=meet*&page=1     -> words starting with "meet", second page
+    @GetMapping("/{roomId}/search")
+    public ResponseEntity<?> searchMessages(
+            @PathVariable String roomId,
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "0", required = false) int page,
+            @RequestParam(value = "size", defaultValue = "20", required = false) int size
+    ) {
+        if (!roomService.roomExists(roomId)) {
+            return ResponseEntity.badRequest().body("Room not found!!");
+        }
+        if (page < 0 || size < 1 || size > MAX_HISTORY_LIMIT) {
+            return ResponseEntity.badRequest().body("page must be >= 0 and size between 1 and " + MAX_HISTORY_LIMIT);
+        }
+
+        MessageSearchPage results = messageSearchService.search(roomId, query, page, size);
+        return ResponseEntity.ok(results);
+    }
+
+    //set how long messages of a room are kept
+    //  PUT /api/v1/rooms/{roomId}/retention  {"maxAgeDays": 30, "maxMessages": 10000}
+    //  a null / missing field removes that limit; old messages are removed by the retention sweeper
+    //  rooms have no owner, so only admins (app.admin.emails) may change it: it deletes everyone's history
+    @PutMapping("/{roomId}/retention")
+    public ResponseEntity<?> updateRetention(
+            @PathVariable String roomId,
+            @RequestBody RoomRetentionRequest request,
+            Authentication authentication
+    ) {
+        if (!adminService.isAdmin(authentication)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only admins can change a room's retention.");
+        }
+        try {
+            Room room = messageRetentionService.updateRetention(roomId, request.getMaxAgeDays(), request.getMaxMessages());
+            if (room == null) {
+                return ResponseEntity.badRequest().body("Room not found!!");
+            }
+            return ResponseEntity.ok(room);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 }
@@ -1,6 +1,6 @@
 package com.example.HashChatBackend.controllers;
 
-import com.example.HashChatBackend.model.Room;
+import com.example.HashChatBackend.model.RoomHistoryPage;
 import com.example.HashChatBackend.model.User;
 import com.example.HashChatBackend.model.UserProfileDTO;
 import com.example.HashChatBackend.model.UserRoomMembership;
@@ -21,6 +21,8 @@ import java.util.Map;
 //@CrossOrigin(origins = "http://localhost:5173")
 public class UserController {
 
+    private static final int MAX_ROOM_HISTORY_LIMIT = 50;
+
     @Autowired
     private UserService userService;
 
@@ -144,15 +146,22 @@ public class UserController {
      *
      * Endpoint: GET /api/v1/user/rooms/history
      * Example: /api/v1/user/rooms/history?limit=10
+     *          /api/v1/user/rooms/history?limit=10&cursor=<nextCursor of the previous page>
      *
      * @param authHeader The Authorization header containing the JWT token (e.g., "Bearer <token>").
      * @param limit An optional query parameter to limit the number of rooms returned (default to 10).
-     * @return ResponseEntity containing a list of Room objects or an error.
+     * @param cursor An optional cursor returned as nextCursor by the previous page.
+     * @return ResponseEntity containing a RoomHistoryPage of RoomSummary objects (id, roomId, last message
+     * preview, last activity, message count) or an error.
      */
     @GetMapping("/rooms/history")
     public ResponseEntity<?> getPreviouslyConnectedRooms(
             @RequestHeader("Authorization") String authHeader,
-            @RequestParam(defaultValue = "10") int limit) {
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String cursor) {
+        if (limit < 1 || limit > MAX_ROOM_HISTORY_LIMIT) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_ROOM_HISTORY_LIMIT));
+        }
         try {
             String token = authHeader.substring(7); // Remove "Bearer " prefix
             String email = jwtUtil.getEmailFromToken(token); // Extract email from token
@@ -168,11 +177,13 @@ public class UserController {
             }
 
             // Call the UserRoomService to get the room history
-            List<Room> rooms = userRoomService.getPreviouslyVisitedRooms(userId, limit);
+            RoomHistoryPage rooms = userRoomService.getPreviouslyVisitedRooms(userId, limit, cursor);
 
-            // Return the list of Room objects
+            // Return the page of RoomSummary objects
             return ResponseEntity.ok(rooms);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             // Log the exception for debugging purposes (e.g., using SLF4J/Logback)
             e.printStackTrace();
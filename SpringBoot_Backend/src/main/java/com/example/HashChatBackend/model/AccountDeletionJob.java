@@ -0,0 +1,60 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A queued account deletion, processed in phases by AccountDeletionService.
+ * Stored in MongoDB so a deletion survives restarts: any instance picks up jobs that are
+ * PENDING, or RUNNING with an expired lease (its worker died), and continues after the
+ * last completed phase.
+ */
+@Document(collection = "account_deletion_jobs")
+@CompoundIndex(name = "status_next_attempt_idx", def = "{'status': 1, 'nextAttemptAt': 1}")
+@CompoundIndex(name = "email_status_idx", def = "{'email': 1, 'status': 1}")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountDeletionJob {
+
+    public enum Status { PENDING, RUNNING, COMPLETED, FAILED }
+
+    // Run in this order; each phase can be repeated safely
+    public enum Phase { PROFILE_PICTURE, MESSAGES, ACCOUNT }
+
+    @Id
+    private String id; // random UUID, also works as the handle returned to the client
+    private String email;
+    private Long userId;
+    private String profilePicUrl;
+
+    private Status status;
+    private Phase phase; // phase being worked on (or last one worked on)
+    @Builder.Default
+    private List<Phase> completedPhases = new ArrayList<>();
+    private long progressDone;
+    private long progressTotal;
+
+    private int attempts; // failed attempts of the current phase
+    private String lastError;
+    private LocalDateTime nextAttemptAt;
+
+    private String leaseOwner; // instance running the job
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+}
@@ -13,6 +13,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Message {
 
+    private String MessageId; // server assigned, unique across rooms
+    private long Seq; // position in the room's history, increasing, gaps possible (global chat: position in GlobalChatHistory)
     private String SenderId;
     private String Sender;
     private String Content;
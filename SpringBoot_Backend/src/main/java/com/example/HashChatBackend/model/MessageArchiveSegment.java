@@ -0,0 +1,45 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Describes one archived MessageBucket: its messages are stored gzip compressed
+ * in GridFS (fileId) and the bucket document itself has been removed.
+ * Segments are never appended to; the only rewrite is anonymizing a deleted account's messages.
+ */
+@Document(collection = "message_archive_segments")
+@CompoundIndex(name = "room_bucket_idx", def = "{'roomId': 1, 'bucket': -1}", unique = true)
+@CompoundIndex(name = "room_seq_idx", def = "{'roomId': 1, 'minSeq': -1}")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageArchiveSegment {
+    @Id
+    private String id;
+    private String roomId;
+
+    private long bucket; // the bucket this segment was made from
+    private int count;
+    private long minSeq;
+    private long maxSeq;
+    private LocalDateTime firstTimeStamp;
+    private LocalDateTime lastTimeStamp;
+
+    @Indexed
+    private Set<String> senderIds; // SenderIds appearing in the segment, so account deletion only rewrites segments it must
+
+    private String fileId; // GridFS file holding the compressed messages
+    private long compressedSize;
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,50 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed-size slice of a room's message history.
+ * Buckets are numbered 0, 1, 2... per room and a new one is started once the
+ * current one holds app.messages.bucket-size messages, so no document ever grows
+ * without bound and appending never rewrites older history.
+ */
+@Document(collection = "message_buckets")
+@CompoundIndex(name = "room_bucket_idx", def = "{'roomId': 1, 'bucket': -1}", unique = true)
+@CompoundIndex(name = "room_seq_idx", def = "{'roomId': 1, 'minSeq': -1}") // keyset history queries
+@CompoundIndex(name = "room_last_ts_idx", def = "{'roomId': 1, 'lastTimeStamp': 1}") // age-based retention sweeps of one room
+@CompoundIndex(name = "last_ts_idx", def = "{'lastTimeStamp': 1}") // oldest buckets first, for the archiver
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageBucket {
+    @Id
+    private String id;
+    private String roomId; // the user provided roomId, same as Room.roomId
+
+    private long bucket; // position of this bucket in the room's history
+    private int count; // number of messages pushed into this bucket
+    private long minSeq; // Message.Seq range held by this bucket
+    private long maxSeq;
+
+    private LocalDateTime firstTimeStamp;
+    private LocalDateTime lastTimeStamp;
+
+    // lastTimeStamp + the room's retention age; MongoDB's TTL monitor deletes the bucket after it.
+    // Not set for rooms that keep their history forever
+    @Indexed(name = "expire_at_ttl_idx", expireAfter = "0s")
+    private LocalDateTime expireAt;
+
+    private List<Message> messages = new ArrayList<>();
+}
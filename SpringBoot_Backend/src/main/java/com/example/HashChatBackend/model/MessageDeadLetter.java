@@ -0,0 +1,40 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A placed message that could not be written to its bucket after repeated attempts.
+ * Kept with its room and bucket so MessageDeadLetterService can write it later, exactly
+ * where it would have gone.
+ */
+@Document(collection = "message_dead_letters")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageDeadLetter {
+    @Id
+    private String id;
+
+    private String roomId; // the user provided roomId
+    private long bucket;
+    private Message message;
+
+    private String source; // what gave up on it: write-behind or journal
+    private String lastError;
+    private int replayAttempts;
+
+    @Indexed(name = "next_replay_idx")
+    private LocalDateTime nextReplayAt;
+    private LocalDateTime createdAt;
+}
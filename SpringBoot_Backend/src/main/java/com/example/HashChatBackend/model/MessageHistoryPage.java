@@ -0,0 +1,20 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// One page of a room's history, oldest message first.
+// nextCursor is the value to pass as "before" to get the next (older) page, null when there is none.
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageHistoryPage {
+    private List<Message> messages;
+    private Long nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,27 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// One page of search results, best match first.
+// complete is false when the room has more history than the search index holds
+// (app.search.messages-per-room, archived history is never indexed); only the newest
+// searchedMessages messages, sent since searchedFrom, were searched then.
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchPage {
+    private List<Message> messages;
+    private int page;
+    private int size;
+    private int totalHits;
+    private boolean complete;
+    private int searchedMessages; // messages of the room in the index
+    private LocalDateTime searchedFrom; // time of the oldest of them, null if none
+}
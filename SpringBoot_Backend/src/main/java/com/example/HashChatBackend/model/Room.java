@@ -22,5 +22,11 @@ public class Room {
     private String id; //mongodb unique identifier
     private String roomId; //provided by the user
 
+    // Retention, null = keep forever (see MessageRetentionService)
+    private Integer retentionMaxAgeDays; // delete messages older than this
+    private Long retentionMaxMessages; // keep only the newest N messages
+
+    // Legacy: messages now live in the message_buckets collection (see MessageBucket).
+    // Kept so old documents can still be read and split by MessageBucketMigrationService.
     private List<Message> messages = new ArrayList<>();
 }
@@ -0,0 +1,20 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// One page of a user's visited rooms, most recently visited first.
+// nextCursor is the value to pass as "cursor" to get the next page, null when there is none.
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomHistoryPage {
+    private List<RoomSummary> rooms;
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,16 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Body of PUT /api/v1/rooms/{roomId}/retention. Leave a field null to remove that limit.
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomRetentionRequest {
+    private Integer maxAgeDays;
+    private Long maxMessages;
+}
@@ -0,0 +1,33 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Small read model of a room for room lists (sidebar, "previous rooms").
+ * Shares its id with the Room document, so clients can use it wherever they used a Room's id/roomId.
+ * Kept up to date whenever a batch of messages is written (see RoomSummaryService).
+ */
+@Document(collection = "room_summaries")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomSummary {
+    @Id
+    private String id; // same as Room.id
+    private String roomId;
+
+    private String lastMessagePreview; // first characters of the newest message
+    private String lastSender;
+    private String lastSenderId;
+    private long lastMessageSeq; // seq of the message the preview was taken from
+    private LocalDateTime lastActivityAt;
+    private long messageCount; // messages stored (live and archived); counted on write, recounted by retention sweeps
+}
@@ -0,0 +1,28 @@
+package com.example.HashChatBackend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The sequence number counter of one message stream (a room, or the global chat).
+ * Every node takes seqs from here with an atomic $inc, so two nodes never hand out the same
+ * seq. Rooms also use it to find a message's bucket: seqs from baseSeq on go into buckets
+ * from baseBucket on, bucket-size seqs per bucket, whichever node placed them.
+ */
+@Document(collection = "seq_counters")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeqCounter {
+    @Id
+    private String id; // "room:" + roomId, or "global"
+
+    private long lastSeq; // highest seq handed out (leased) so far
+    private long baseSeq; // first seq allocated through this counter
+    private long baseBucket; // bucket that baseSeq goes into
+}
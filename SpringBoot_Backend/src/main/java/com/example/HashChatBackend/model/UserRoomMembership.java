@@ -11,7 +11,11 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "user_room_memberships") // Name of your junction table in PostgreSQL
+@Table(name = "user_room_memberships", // Name of your junction table in PostgreSQL
+        indexes = {
+                // Room history keyset pagination: WHERE user_id = ? ORDER BY last_visited_at DESC, room_mongo_id DESC
+                @Index(name = "idx_membership_user_last_visited", columnList = "user_id, last_visited_at DESC, room_mongo_id DESC")
+        })
 @Data // Generates getters, setters, equals, hashCode, toString
 @NoArgsConstructor
 @AllArgsConstructor
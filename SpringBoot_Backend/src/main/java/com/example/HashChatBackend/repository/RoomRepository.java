@@ -2,9 +2,14 @@ package com.example.HashChatBackend.repository;
 
 import com.example.HashChatBackend.model.Room;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 public interface RoomRepository extends MongoRepository<Room,String> {
 
     //get room using roomId
     Room findByRoomId(String roomId); //make it Optional<> ?
+
+    //get room without its (legacy) embedded messages, used for the room metadata cache
+    @Query(value = "{ 'roomId': ?0 }", fields = "{ 'messages': 0 }")
+    Room findMetadataByRoomId(String roomId);
 }
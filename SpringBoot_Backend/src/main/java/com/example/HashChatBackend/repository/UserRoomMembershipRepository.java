@@ -2,9 +2,15 @@ package com.example.HashChatBackend.repository;
 
 import com.example.HashChatBackend.model.UserRoomMembership;
 import com.example.HashChatBackend.model.UserRoomMembershipId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,9 +23,31 @@ public interface UserRoomMembershipRepository extends JpaRepository<UserRoomMemb
     // Find all memberships for a specific user, ordered by last visited
     List<UserRoomMembership> findById_UserIdOrderByLastVisitedAtDesc(Long userId);
 
+    // First page of a user's memberships, most recently visited first.
+    // Pass PageRequest.of(0, n) to let the database stop after n rows (uses idx_membership_user_last_visited)
+    @Query("SELECT m FROM UserRoomMembership m WHERE m.id.userId = :userId " +
+            "ORDER BY m.lastVisitedAt DESC, m.id.roomMongoId DESC")
+    List<UserRoomMembership> findRecentByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    // Next page: memberships that sort after (lastVisitedAt, roomMongoId) of the previous page's last row
+    @Query("SELECT m FROM UserRoomMembership m WHERE m.id.userId = :userId " +
+            "AND (m.lastVisitedAt < :lastVisitedAt " +
+            "OR (m.lastVisitedAt = :lastVisitedAt AND m.id.roomMongoId < :roomMongoId)) " +
+            "ORDER BY m.lastVisitedAt DESC, m.id.roomMongoId DESC")
+    List<UserRoomMembership> findRecentByUserIdBefore(@Param("userId") Long userId,
+                                                      @Param("lastVisitedAt") LocalDateTime lastVisitedAt,
+                                                      @Param("roomMongoId") String roomMongoId,
+                                                      Pageable pageable);
+
     //find all memberships for a given roomId
     List<UserRoomMembership> findById_RoomMongoId(String roomMongoId);
 
+    // Deletes all memberships of a user in one statement, without loading them first
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM UserRoomMembership m WHERE m.id.userId = :userId")
+    int deleteById_UserId(@Param("userId") Long userId);
+
     // Find a specific membership by user ID and MongoDB Room ID (useful for existence check)
     boolean existsById_UserIdAndId_RoomMongoId(Long userId, String roomMongoId);
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.AccountDeletionJob;
+import com.example.HashChatBackend.model.User;
+import com.example.HashChatBackend.repository.UserRepo;
+import com.example.HashChatBackend.repository.UserRoomMembershipRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs account deletions as durable background jobs.
+ * The HTTP request only checks the password and queues an AccountDeletionJob; a small worker
+ * pool then deletes the profile picture, anonymizes the user's messages and removes the
+ * PostgreSQL rows, in that order. A failed phase is retried with exponential backoff, and a
+ * job whose worker died (crash, redeploy) is taken over once its lease runs out. While a job
+ * runs, a heartbeat renews its lease every third of lease-seconds, so a long single step
+ * (a slow Cloudinary call, rewriting a big archive segment) doesn't let another worker take
+ * it over; a worker that finds it lost the lease stops before its next phase. Every phase
+ * can be repeated safely, so resuming a job never does harm.
+ */
+@Service
+public class AccountDeletionService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserRepo userRepository;
+
+    @Autowired
+    private UserRoomMembershipRepository userRoomMembershipRepository;
+
+    @Autowired
+    private CloudinaryService cloudinaryService;
+
+    @Autowired
+    private MessageAnonymizationService messageAnonymizationService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AuthIdentityCache authIdentityCache;
+
+    @Value("${app.account-deletion.workers:2}")
+    private int workerCount;
+
+    @Value("${app.account-deletion.max-attempts:5}")
+    private int maxAttempts;
+
+    // Delay before the first retry, doubled for every further attempt
+    @Value("${app.account-deletion.retry-backoff-ms:5000}")
+    private long retryBackoffMs;
+
+    // How long a job stays owned by this instance without a sign of progress
+    @Value("${app.account-deletion.lease-seconds:120}")
+    private long leaseSeconds;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // Jobs queued or running on this instance, so the poller doesn't submit them twice
+    private final Set<String> dispatched = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService workers;
+
+    // Renews the leases of the jobs running on this instance
+    private ScheduledExecutorService heartbeats;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "account-deletion-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "account-deletion-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the deletion of an account (password already checked by the caller).
+     * Deleting the same account again while its job is unfinished returns that job.
+     */
+    public AccountDeletionJob submit(User user) {
+        AccountDeletionJob existing = findUnfinishedJob(user.getEmail());
+        if (existing != null) {
+            return existing;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        AccountDeletionJob job = AccountDeletionJob.builder()
+                .id(UUID.randomUUID().toString())
+                .email(user.getEmail())
+                .userId(user.getId())
+                .profilePicUrl(user.getProfilePicUrl())
+                .status(AccountDeletionJob.Status.PENDING)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        mongoTemplate.insert(job);
+        dispatch(job.getId());
+        System.out.println("Queued account deletion job " + job.getId() + " for user: " + user.getEmail());
+        return job;
+    }
+
+    public AccountDeletionJob getJob(String jobId) {
+        return mongoTemplate.findById(jobId, AccountDeletionJob.class);
+    }
+
+    /**
+     * @return true while the account has a deletion job that has not finished.
+     */
+    public boolean isDeletionPending(String email) {
+        return findUnfinishedJob(email) != null;
+    }
+
+    /**
+     * Picks up jobs that are due: retries whose backoff has passed, jobs left behind by a
+     * crashed instance and, shortly after startup, jobs that were running when this
+     * instance went down.
+     */
+    @Scheduled(fixedDelayString = "${app.account-deletion.poll-interval-ms:10000}", initialDelayString = "${app.account-deletion.initial-delay-ms:5000}")
+    public void pickUpJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(AccountDeletionJob.Status.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(AccountDeletionJob.Status.RUNNING).and("leaseUntil").lt(now)));
+        due.fields().include("id");
+        for (AccountDeletionJob job : mongoTemplate.find(due, AccountDeletionJob.class)) {
+            dispatch(job.getId());
+        }
+    }
+
+    private AccountDeletionJob findUnfinishedJob(String email) {
+        return mongoTemplate.findOne(new Query(Criteria.where("email").is(email)
+                .and("status").in(AccountDeletionJob.Status.PENDING, AccountDeletionJob.Status.RUNNING)), AccountDeletionJob.class);
+    }
+
+    private void dispatch(String jobId) {
+        if (!dispatched.add(jobId)) {
+            return;
+        }
+        try {
+            workers.submit(() -> {
+                try {
+                    run(jobId);
+                } catch (Exception e) {
+                    System.err.println("Account deletion job " + jobId + " stopped: " + e.getMessage());
+                } finally {
+                    dispatched.remove(jobId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dispatched.remove(jobId); // shutting down, the next start resumes it
+        }
+    }
+
+    private void run(String jobId) {
+        AccountDeletionJob job = claim(jobId);
+        if (job == null) {
+            return; // not due yet, finished, or owned by another instance
+        }
+
+        long heartbeatSeconds = Math.max(1, leaseSeconds / 3);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> renewLease(job),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        try {
+            for (AccountDeletionJob.Phase phase : AccountDeletionJob.Phase.values()) {
+                if (job.getCompletedPhases().contains(phase)) {
+                    continue; // done before a crash or an earlier failed attempt
+                }
+                if (!update(job, new Update().set("phase", phase).set("progressDone", 0).set("progressTotal", 0))) {
+                    System.err.println("Account deletion job " + job.getId() + " was taken over by another worker, stopping before phase " + phase);
+                    return;
+                }
+                try {
+                    runPhase(job, phase);
+                } catch (Exception e) {
+                    fail(job, phase, e);
+                    return;
+                }
+                update(job, new Update().addToSet("completedPhases", phase).set("attempts", 0).unset("lastError"));
+                job.getCompletedPhases().add(phase);
+            }
+        } finally {
+            heartbeat.cancel(false);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        update(job, new Update()
+                .set("status", AccountDeletionJob.Status.COMPLETED)
+                .set("completedAt", now)
+                .unset("leaseOwner")
+                .unset("leaseUntil"));
+        System.out.println("User account deleted successfully: " + job.getEmail() + " (job " + job.getId() + ")");
+    }
+
+    private void runPhase(AccountDeletionJob job, AccountDeletionJob.Phase phase) throws Exception {
+        switch (phase) {
+            case PROFILE_PICTURE -> {
+                // Deleting an image that is already gone is not an error for Cloudinary.
+                // Any other failure is logged and skipped: an orphaned image must not keep the
+                // account from being deleted
+                String publicId = cloudinaryService.extractPublicId(job.getProfilePicUrl());
+                if (publicId != null) {
+                    try {
+                        cloudinaryService.deleteFile(publicId);
+                        System.out.println("Deleted Cloudinary image for user: " + job.getEmail());
+                    } catch (Exception e) {
+                        System.err.println("Failed to delete Cloudinary image " + publicId + " for user "
+                                + job.getEmail() + ", continuing: " + e.getMessage());
+                    }
+                }
+            }
+            case MESSAGES -> {
+                long buckets = messageAnonymizationService.anonymizeSender(job.getEmail(), (step, done, total) ->
+                        update(job, new Update().set("progressDone", done).set("progressTotal", total)));
+                System.out.println("Anonymized messages for user: " + job.getEmail() + " (" + buckets + " buckets updated)");
+            }
+            case ACCOUNT -> {
+                transactionTemplate.executeWithoutResult(status -> {
+                    // Delete all user-room memberships, then the user entity
+                    userRoomMembershipRepository.deleteById_UserId(job.getUserId());
+                    userRepository.findById(job.getUserId()).ifPresent(userRepository::delete);
+                });
+                // Tokens of the deleted account stop working for WebSocket connects right away
+                authIdentityCache.evictUser(job.getEmail());
+            }
+        }
+    }
+
+    // Atomically takes ownership of a due job
+    private AccountDeletionJob claim(String jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        Query claimable = new Query(new Criteria().andOperator(
+                Criteria.where("id").is(jobId),
+                new Criteria().orOperator(
+                        Criteria.where("status").is(AccountDeletionJob.Status.PENDING).and("nextAttemptAt").lte(now),
+                        Criteria.where("status").is(AccountDeletionJob.Status.RUNNING).and("leaseUntil").lt(now))));
+        Update update = new Update()
+                .set("status", AccountDeletionJob.Status.RUNNING)
+                .set("leaseOwner", instanceId)
+                .set("leaseUntil", now.plusSeconds(leaseSeconds))
+                .set("updatedAt", now);
+        return mongoTemplate.findAndModify(claimable, update, FindAndModifyOptions.options().returnNew(true), AccountDeletionJob.class);
+    }
+
+    private void fail(AccountDeletionJob job, AccountDeletionJob.Phase phase, Exception e) {
+        int attempts = job.getAttempts() + 1;
+        job.setAttempts(attempts);
+        Update update = new Update()
+                .set("attempts", attempts)
+                .set("lastError", phase + ": " + e.getMessage())
+                .unset("leaseOwner")
+                .unset("leaseUntil");
+        if (attempts >= maxAttempts) {
+            update.set("status", AccountDeletionJob.Status.FAILED);
+            System.err.println("Account deletion job " + job.getId() + " failed in phase " + phase + ", giving up: " + e.getMessage());
+        } else {
+            long backoff = retryBackoffMs << Math.min(attempts - 1, 16);
+            update.set("status", AccountDeletionJob.Status.PENDING)
+                    .set("nextAttemptAt", LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(backoff)));
+            System.err.println("Account deletion job " + job.getId() + " failed in phase " + phase
+                    + " (attempt " + attempts + "), retrying in " + backoff + " ms: " + e.getMessage());
+        }
+        update(job, update);
+    }
+
+    // Every write by the owning worker also extends its lease.
+    // Returns false if this instance no longer owns the job, in which case nothing was written
+    private boolean update(AccountDeletionJob job, Update update) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!update.modifies("leaseUntil")) {
+            update.set("leaseUntil", now.plusSeconds(leaseSeconds));
+        }
+        update.set("updatedAt", now);
+        return mongoTemplate.updateFirst(new Query(Criteria.where("id").is(job.getId()).and("leaseOwner").is(instanceId)),
+                update, AccountDeletionJob.class).getMatchedCount() > 0;
+    }
+
+    // Heartbeat: keeps the lease while a phase runs, whether or not it reports progress
+    private void renewLease(AccountDeletionJob job) {
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(job.getId())
+                            .and("leaseOwner").is(instanceId)
+                            .and("status").is(AccountDeletionJob.Status.RUNNING)),
+                    new Update().set("leaseUntil", LocalDateTime.now().plusSeconds(leaseSeconds)),
+                    AccountDeletionJob.class);
+        } catch (Exception e) {
+            // The next heartbeat tries again; the lease is several heartbeats long
+            System.err.println("Failed to renew the lease of account deletion job " + job.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lets running phases finish; jobs that don't are resumed on the next start.
+     */
+    @PreDestroy
+    public void stop() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        heartbeats.shutdownNow(); // after the workers: phases still running keep their leases
+    }
+}
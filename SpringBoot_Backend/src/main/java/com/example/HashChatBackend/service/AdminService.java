@@ -0,0 +1,28 @@
+package com.example.HashChatBackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Decides who may use operator-only endpoints (room retention, WebSocket queue stats).
+ * Users have no roles, so admins are listed by email in app.admin.emails; with the list
+ * empty (the default) nobody is an admin.
+ */
+@Service
+public class AdminService {
+
+    @Value("${app.admin.emails:}")
+    private List<String> adminEmails;
+
+    public boolean isAdmin(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated() || authentication.getName() == null) {
+            return false;
+        }
+        return adminEmails.stream()
+                .map(String::trim)
+                .anyMatch(email -> !email.isEmpty() && email.equalsIgnoreCase(authentication.getName()));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.utils.JwtUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Resolves a JWT to an authenticated user for WebSocket CONNECT, without a JWT parse and a
+ * PostgreSQL query on every connect.
+ *
+ * Two bounded caches: verified tokens (token -> email and expiry) and user identities
+ * (email -> UserDetails). A client reconnecting with the same token costs two map lookups;
+ * concurrent misses for the same key (a user's tabs reconnecting after a deploy) share one
+ * load. Invalid tokens are not cached. A cached token is never used past its own expiry.
+ * Deleting an account evicts the user and their tokens on this instance; other instances
+ * drop them when user-ttl-seconds runs out.
+ */
+@Service
+public class AuthIdentityCache {
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.websocket.auth-cache.max-tokens:10000}")
+    private long maxTokens;
+
+    @Value("${app.websocket.auth-cache.max-users:10000}")
+    private long maxUsers;
+
+    @Value("${app.websocket.auth-cache.token-ttl-seconds:900}")
+    private long tokenTtlSeconds;
+
+    @Value("${app.websocket.auth-cache.user-ttl-seconds:300}")
+    private long userTtlSeconds;
+
+    private record VerifiedToken(String email, long expiresAtMillis) {
+    }
+
+    // token -> subject and expiry of a token whose signature has been checked
+    private Cache<String, VerifiedToken> tokens;
+
+    // email -> user as loaded by CustomUserDetailsService
+    private Cache<String, UserDetails> users;
+
+    @PostConstruct
+    public void initCaches() {
+        tokens = Caffeine.newBuilder()
+                .maximumSize(maxTokens)
+                .expireAfterWrite(Duration.ofSeconds(tokenTtlSeconds))
+                .recordStats()
+                .build();
+        users = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofSeconds(userTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "wsAuthTokens");
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "wsAuthUsers");
+    }
+
+    /**
+     * @return The authenticated user for the token, or null if the token is invalid or expired
+     *         or its user doesn't exist.
+     */
+    public Authentication authenticate(String token) {
+        VerifiedToken verified = tokens.get(token, this::verify);
+        if (verified == null) {
+            return null;
+        }
+        if (verified.expiresAtMillis() <= System.currentTimeMillis()) {
+            tokens.invalidate(token);
+            return null;
+        }
+
+        UserDetails userDetails = users.get(verified.email(), this::loadUser);
+        if (userDetails == null) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
+
+    /**
+     * Forgets a user and every token issued to them, e.g. once their account is deleted.
+     */
+    public void evictUser(String email) {
+        users.invalidate(email);
+        tokens.asMap().values().removeIf(verified -> email.equals(verified.email()));
+    }
+
+    // Returning null leaves nothing in the cache
+    private VerifiedToken verify(String token) {
+        try {
+            Claims claims = jwtUtil.parseToken(token);
+            if (claims.getSubject() == null) {
+                return null;
+            }
+            long expiresAt = claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE;
+            return new VerifiedToken(claims.getSubject(), expiresAt);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private UserDetails loadUser(String email) {
+        try {
+            return userDetailsService.loadUserByUsername(email);
+        } catch (UsernameNotFoundException e) {
+            System.err.println("WebSocket CONNECT: User not found for email '" + email + "'.");
+            return null;
+        }
+    }
+}
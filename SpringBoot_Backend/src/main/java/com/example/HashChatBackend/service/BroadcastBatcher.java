@@ -0,0 +1,171 @@
+package com.example.HashChatBackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-batches broadcasts for clients that asked for it.
+ *
+ * Every message published to a batchable topic (/topic/room/{roomId}, /topic/global) is also
+ * collected for {topic}/batch, and the messages of one short window are sent there as a single
+ * JSON array frame. Clients that send the X-Accept-Batch header on CONNECT are subscribed to the
+ * /batch destination instead (see BatchSubscriptionInterceptor); everyone else keeps receiving
+ * one frame per message.
+ * Only topics with at least one /batch subscriber on this node are collected. Each node
+ * batches for its own subscribers and sends the batches to its local broker: messages from
+ * other nodes are added through ClusterCacheSync, so batches are never fanned out themselves.
+ * The window adapts to each topic's load: min-window-ms for a quiet room, growing towards
+ * max-window-ms as the message rate approaches high-rate. A batch that reaches max-size is sent
+ * right away.
+ */
+@Service
+public class BroadcastBatcher {
+
+    public static final String BATCH_SUFFIX = "/batch";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.websocket.batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.websocket.batch.min-window-ms:5}")
+    private long minWindowMs;
+
+    @Value("${app.websocket.batch.max-window-ms:20}")
+    private long maxWindowMs;
+
+    // Messages per second at which a topic gets the longest window
+    @Value("${app.websocket.batch.high-rate:500}")
+    private double highRate;
+
+    @Value("${app.websocket.batch.max-size:100}")
+    private int maxSize;
+
+    // topic -> batch being collected; idle topics drop out of the cache
+    private Cache<String, TopicBatch> batches;
+
+    // topic -> number of /batch subscriptions on this node (see BatchSubscriptionInterceptor)
+    private final ConcurrentHashMap<String, Integer> subscribers = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    private DistributionSummary batchSizes;
+
+    private static class TopicBatch {
+        private List<Object> pending = new ArrayList<>();
+        private boolean scheduled;
+        private double rate; // messages per second, moving average over recent windows
+        private long lastFlushNanos = System.nanoTime();
+    }
+
+    @PostConstruct
+    public void init() {
+        batches = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "broadcast-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        batchSizes = DistributionSummary.builder("hashchat.websocket.batch.size").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void subscribed(String topic) {
+        subscribers.merge(topic, 1, Integer::sum);
+    }
+
+    public void unsubscribed(String topic) {
+        subscribers.computeIfPresent(topic, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Adds a message that was just broadcast on {@code topic} to the topic's current batch,
+     * if anyone on this node is subscribed to the topic's /batch destination.
+     */
+    public void add(String topic, Object message) {
+        if (!enabled || !subscribers.containsKey(topic)) {
+            return;
+        }
+        TopicBatch batch = batches.get(topic, k -> new TopicBatch());
+        List<Object> full = null;
+        synchronized (batch) {
+            batch.pending.add(message);
+            if (batch.pending.size() >= maxSize) {
+                full = takePending(batch);
+            } else if (!batch.scheduled) {
+                batch.scheduled = true;
+                scheduler.schedule(() -> flush(topic, batch), windowMs(batch), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(topic, full);
+        }
+    }
+
+    private void flush(String topic, TopicBatch batch) {
+        List<Object> messages;
+        synchronized (batch) {
+            batch.scheduled = false;
+            messages = takePending(batch);
+        }
+        if (!messages.isEmpty()) {
+            send(topic, messages);
+        }
+    }
+
+    // Must hold the batch's lock
+    private List<Object> takePending(TopicBatch batch) {
+        List<Object> messages = batch.pending;
+        batch.pending = new ArrayList<>();
+
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - batch.lastFlushNanos) / 1e9);
+        batch.rate = 0.7 * batch.rate + 0.3 * (messages.size() / seconds);
+        batch.lastFlushNanos = now;
+        return messages;
+    }
+
+    private long windowMs(TopicBatch batch) {
+        double load = Math.min(1.0, batch.rate / highRate);
+        return minWindowMs + Math.round((maxWindowMs - minWindowMs) * load);
+    }
+
+    private void send(String topic, List<Object> messages) {
+        batchSizes.record(messages.size());
+        try {
+            messagingTemplate.convertAndSend(topic + BATCH_SUFFIX, messages);
+        } catch (Exception e) {
+            System.err.println("Failed to send batch to " + topic + BATCH_SUFFIX + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+    }
+}
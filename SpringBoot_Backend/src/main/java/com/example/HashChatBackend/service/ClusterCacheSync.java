@@ -0,0 +1,60 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps this node's in-memory message state in step with the other nodes: messages they
+ * broadcast (RemoteBroadcastEvent) go into the recent message cache and search index of
+ * their room, or into the global chat history, and into this node's broadcast batches, just
+ * like messages sent on this node.
+ */
+@Service
+public class ClusterCacheSync {
+
+    private static final Pattern ROOM_TOPIC = Pattern.compile("^/topic/room/([^/]+)$");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private GlobalChatHistory globalChatHistory;
+
+    @Autowired
+    private BroadcastBatcher broadcastBatcher;
+
+    @EventListener
+    public void onRemoteBroadcast(RemoteBroadcastEvent event) {
+        String destination = event.getDestination();
+        try {
+            if ("/topic/global".equals(destination)) {
+                Message message = objectMapper.readValue(event.getPayload(), Message.class);
+                globalChatHistory.insert(message);
+                broadcastBatcher.add(destination, message);
+                return;
+            }
+            Matcher room = ROOM_TOPIC.matcher(destination);
+            if (room.matches()) {
+                Message message = objectMapper.readValue(event.getPayload(), Message.class);
+                recentMessageCache.add(room.group(1), message);
+                messageSearchService.index(room.group(1), message);
+                broadcastBatcher.add(destination, message);
+            }
+        } catch (Exception e) {
+            // The broadcast itself was delivered; only this node's caches miss the message
+            System.err.println("Failed to apply broadcast to " + destination + " from another node: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.HashChatBackend.service;
+
+/**
+ * Delivers broadcasts to the /topic subscribers of every backend node, not only this one.
+ * The STOMP broker is the in-process simple broker, so without this a message sent on one
+ * node never reaches clients connected to another.
+ *
+ * Implementations (picked with app.cluster.fanout):
+ *  - loopback: single node, hands the message straight to the local broker
+ *  - mongo: nodes exchange broadcasts through a capped MongoDB collection
+ */
+public interface ClusterFanout {
+
+    /**
+     * Sends a payload to a broker destination (e.g. /topic/room/{roomId}) on every node.
+     * Subscribers on this node get it right away; other nodes get it as soon as they see it.
+     */
+    void publish(String destination, Object payload);
+
+    /**
+     * @return true if other nodes may be placing messages too, so per-node state (seq leases,
+     * caches) has to be kept in step through MongoDB and remote broadcasts.
+     */
+    default boolean isClustered() {
+        return false;
+    }
+}
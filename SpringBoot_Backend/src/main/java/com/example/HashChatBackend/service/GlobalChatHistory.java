@@ -0,0 +1,107 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last N global chat messages, in memory only (nothing is written to a database).
+ * Lock-free ring: an append claims the next position with one atomic increment and stores
+ * the message in its slot, without allocating anything. The position becomes the message's
+ * Seq, which is how readers tell a current slot from one a newer message is being written to.
+ * With a clustered fan-out seqs are leased in blocks (app.messages.seq-block-size) from the
+ * "global" SeqCounter in MongoDB instead, so nodes don't hand out the same one, and messages
+ * sent on other nodes are inserted here by ClusterCacheSync. Seqs from different nodes'
+ * blocks are not dense, so the ring is replaced by a sorted map that keeps the N highest seqs
+ * (across nodes that is block order rather than send time).
+ */
+@Service
+public class GlobalChatHistory {
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    @Autowired
+    private SeqCounterService seqCounterService;
+
+    @Value("${app.global.history.size:100}")
+    private int size;
+
+    @Value("${app.messages.seq-block-size:100}")
+    private int seqBlockSize;
+
+    private AtomicReferenceArray<Message> slots;
+
+    // Seq of the last appended message
+    private final AtomicLong lastSeq = new AtomicLong();
+
+    // Clustered only: this node's lease of global seqs, guarded by "this"
+    private long nextLeasedSeq = 1;
+    private long leaseEnd;
+
+    // Clustered only: seq -> message, the newest N
+    private final ConcurrentSkipListMap<Long, Message> clustered = new ConcurrentSkipListMap<>();
+
+    @PostConstruct
+    public void init() {
+        slots = new AtomicReferenceArray<>(size);
+    }
+
+    public void append(Message message) {
+        if (!clusterFanout.isClustered()) {
+            long seq = lastSeq.incrementAndGet();
+            message.setSeq(seq);
+            slots.set((int) (seq % size), message);
+            return;
+        }
+        message.setSeq(nextLeasedSeq());
+        insert(message);
+    }
+
+    private synchronized long nextLeasedSeq() {
+        if (nextLeasedSeq > leaseEnd) {
+            leaseEnd = seqCounterService.lease("global", seqBlockSize).getLastSeq();
+            nextLeasedSeq = leaseEnd - seqBlockSize + 1;
+        }
+        return nextLeasedSeq++;
+    }
+
+    /**
+     * Adds a message that already has its seq, with a clustered fan-out (sent on this node or
+     * another one). Messages can arrive in any order.
+     */
+    public void insert(Message message) {
+        clustered.putIfAbsent(message.getSeq(), message);
+        while (clustered.size() > size) {
+            clustered.pollFirstEntry();
+        }
+    }
+
+    /**
+     * @return The newest messages, oldest first. A slot that is being overwritten while this
+     * runs is skipped, so the result can be a message or two short under heavy traffic.
+     */
+    public List<Message> getRecent() {
+        if (clusterFanout.isClustered()) {
+            return new ArrayList<>(clustered.values());
+        }
+        long last = lastSeq.get();
+        long first = Math.max(1, last - size + 1);
+        List<Message> messages = new ArrayList<>((int) (last - first + 1));
+        for (long seq = first; seq <= last; seq++) {
+            Message message = slots.get((int) (seq % size));
+            if (message != null && message.getSeq() == seq) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
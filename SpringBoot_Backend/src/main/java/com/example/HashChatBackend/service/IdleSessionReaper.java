@@ -0,0 +1,213 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.RoomPresenceInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Closes WebSocket sessions that have gone quiet, using a hashed timing wheel.
+ *
+ * Every inbound frame (STOMP heartbeats included) only writes the session's last-activity
+ * time, which is O(1) and doesn't touch the wheel. Each session sits in the wheel slot of its
+ * deadline (last activity + idle-timeout). Every tick processes the slots that are due: sessions
+ * that were active since are moved to the slot of their new deadline, the rest are closed
+ * together and removed from presence right away, without waiting for the container to notice
+ * the dead connection. Each live session is looked at about once per idle-timeout, and an idle
+ * one is closed within a tick of its deadline. The tick length follows from idle-timeout-ms and
+ * wheel-size (about idle-timeout / (wheel-size - 1)), and the wheel is ticked at exactly that rate.
+ *
+ * Clients that negotiated STOMP heartbeats are also dropped by the broker after missing them;
+ * this catches half-open connections of clients without heartbeats and sessions that never
+ * got as far as the broker.
+ */
+@Service
+public class IdleSessionReaper implements SchedulingConfigurer {
+
+    @Autowired
+    private UserPresenceRoomService userPresenceService;
+
+    // Lazy: WebSocketConfig needs this reaper while the broker (and so the template) is being built
+    @Autowired
+    @Lazy
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.websocket.idle-timeout-ms:120000}")
+    private long idleTimeoutMs;
+
+    @Value("${app.websocket.reaper.wheel-size:64}")
+    private int wheelSize;
+
+    // Derived from idleTimeoutMs and wheelSize in init(), also the rate tick() runs at
+    private long tickMs;
+
+    private static class TrackedSession {
+        private final WebSocketSession session;
+        private volatile long lastActiveMillis = System.currentTimeMillis();
+        private volatile int slot = -1;
+
+        TrackedSession(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    // sessionId -> tracked session
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+
+    private Set<TrackedSession>[] wheel;
+
+    // Last tick number processed (a tick number is millis / tickMs)
+    private long processedTick;
+
+    private Counter reaped;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void init() {
+        if (wheelSize < 2) {
+            throw new IllegalArgumentException("app.websocket.reaper.wheel-size must be at least 2, was " + wheelSize);
+        }
+        // The wheel spans a bit more than one idle-timeout, so a deadline never wraps onto the current slot
+        tickMs = Math.max(1, (idleTimeoutMs + wheelSize - 2) / (wheelSize - 1));
+        wheel = new Set[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        processedTick = System.currentTimeMillis() / tickMs;
+        reaped = Counter.builder("hashchat.websocket.reaped").register(meterRegistry);
+        Gauge.builder("hashchat.websocket.tracked-sessions", sessions, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Decorator factory for WebSocketTransportRegistration: tracks sessions from open to close.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                TrackedSession tracked = new TrackedSession(session);
+                sessions.put(session.getId(), tracked);
+                schedule(tracked);
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                untrack(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Inbound channel interceptor that records activity for the sending session.
+     */
+    public ChannelInterceptor activityInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                TrackedSession tracked = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+                if (tracked != null) {
+                    tracked.lastActiveMillis = System.currentTimeMillis();
+                }
+                return message;
+            }
+        };
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.addFixedRateTask(this::tick, Duration.ofMillis(tickMs));
+    }
+
+    public void tick() {
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMs;
+        List<TrackedSession> expired = new ArrayList<>();
+        // Catch up on ticks missed while the scheduler was busy, at most one full turn
+        for (long tick = Math.max(processedTick + 1, currentTick - wheelSize + 1); tick <= currentTick; tick++) {
+            int slot = (int) (tick % wheelSize);
+            long tickEnd = (tick + 1) * tickMs;
+            for (TrackedSession tracked : wheel[slot]) {
+                // A deadline inside this tick counts as reached (at most one tick early); otherwise
+                // the session would only be looked at again a whole turn later
+                if (tracked.lastActiveMillis + idleTimeoutMs < tickEnd) {
+                    wheel[slot].remove(tracked);
+                    expired.add(tracked);
+                } else if (slotFor(tracked) != slot) {
+                    wheel[slot].remove(tracked);
+                    schedule(tracked);
+                }
+            }
+        }
+        processedTick = currentTick;
+
+        for (TrackedSession tracked : expired) {
+            reap(tracked);
+        }
+        if (!expired.isEmpty()) {
+            System.out.println("Closed " + expired.size() + " idle WebSocket sessions");
+        }
+    }
+
+    private void schedule(TrackedSession tracked) {
+        int slot = slotFor(tracked);
+        tracked.slot = slot;
+        wheel[slot].add(tracked);
+    }
+
+    private int slotFor(TrackedSession tracked) {
+        return (int) (((tracked.lastActiveMillis + idleTimeoutMs) / tickMs) % wheelSize);
+    }
+
+    private void untrack(String sessionId) {
+        TrackedSession tracked = sessions.remove(sessionId);
+        if (tracked != null && tracked.slot >= 0) {
+            wheel[tracked.slot].remove(tracked);
+        }
+    }
+
+    private void reap(TrackedSession tracked) {
+        String sessionId = tracked.session.getId();
+        sessions.remove(sessionId);
+        reaped.increment();
+        try {
+            tracked.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            System.err.println("Failed to close idle WebSocket session " + sessionId + ": " + e.getMessage());
+        }
+
+        // Don't wait for the disconnect event, which a half-open connection may delay for a long time.
+        // The event listener does the same later and finds nothing left to remove.
+        RoomPresenceInfo presence = userPresenceService.removeUserFromRoom(sessionId);
+        if (presence != null) {
+            messagingTemplate.convertAndSend("/topic/room/" + presence.getRoomId() + "/activeUsers", presence.getActiveUsers());
+        }
+    }
+}
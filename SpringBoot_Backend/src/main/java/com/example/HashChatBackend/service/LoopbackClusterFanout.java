@@ -0,0 +1,23 @@
+package com.example.HashChatBackend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Single node fan-out: every publish goes to the local simple broker only.
+ * This is the default, and what tests and local development run with.
+ */
+@Service
+@ConditionalOnProperty(name = "app.cluster.fanout", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackClusterFanout implements ClusterFanout {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Override
+    public void publish(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+    }
+}
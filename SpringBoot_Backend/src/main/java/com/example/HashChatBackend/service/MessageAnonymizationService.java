@@ -0,0 +1,126 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.MessageBucket;
+import com.example.HashChatBackend.model.Room;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Replaces a deleted account's name and profile picture on every message it sent.
+ * Buckets are updated by MongoDB itself (updateMulti with an array filter) in chunks of ids,
+ * so no message history is loaded into the application and memory use does not depend on
+ * how active the user was. SenderId is kept so the frontend can still group the messages.
+ */
+@Service
+public class MessageAnonymizationService {
+
+    public static final String DELETED_USER_NAME = "Deleted User";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
+    @Value("${app.messages.anonymize.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Listener for progress of a running anonymization.
+     */
+    public interface ProgressListener {
+        void onProgress(String phase, long done, long total);
+    }
+
+    /**
+     * Anonymizes all messages of a sender.
+     *
+     * @return The number of bucket documents modified.
+     * @throws IOException If archived segments could not be rewritten. Running it again is safe,
+     *                     buckets and segments that are already anonymized are left alone.
+     */
+    public long anonymizeSender(String email) throws IOException {
+        return anonymizeSender(email, (phase, done, total) ->
+                System.out.println("Anonymizing " + email + ": " + phase + " " + done + "/" + total));
+    }
+
+    public long anonymizeSender(String email, ProgressListener progress) throws IOException {
+        // 1. Rooms that still embed their history are split into buckets first,
+        // so only bucket documents need to be updated below
+        Query legacyQuery = new Query(Criteria.where("messages.SenderId").is(email));
+        legacyQuery.fields().include("roomId");
+        for (Room room : mongoTemplate.find(legacyQuery, Room.class)) {
+            messageStoreService.ensureMigrated(room.getRoomId());
+        }
+
+        // 2. Buckets, chunk by chunk. Only the ids of one chunk are held in memory
+        // "messages.SenderId" must match the field name in your MongoDB Message object (Case Sensitive!)
+        Query bucketQuery = new Query(Criteria.where("messages.SenderId").is(email));
+        long total = mongoTemplate.count(bucketQuery, MessageBucket.class);
+        bucketQuery.fields().include("id");
+        bucketQuery.cursorBatchSize(chunkSize);
+
+        long done = 0;
+        long modified = 0;
+        List<String> chunk = new ArrayList<>(chunkSize);
+        try (Stream<MessageBucket> buckets = mongoTemplate.stream(bucketQuery, MessageBucket.class)) {
+            for (MessageBucket bucket : (Iterable<MessageBucket>) buckets::iterator) {
+                chunk.add(bucket.getId());
+                if (chunk.size() == chunkSize) {
+                    modified += anonymizeBuckets(chunk, email);
+                    done += chunk.size();
+                    chunk.clear();
+                    progress.onProgress("buckets", done, total);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            modified += anonymizeBuckets(chunk, email);
+            done += chunk.size();
+            progress.onProgress("buckets", done, total);
+        }
+
+        // 3. Archived segments are gzip files, they are rewritten one at a time.
+        // A failure is passed on so the caller retries instead of leaving the name in the archive
+        int segments = messageArchiveService.anonymizeSender(email);
+        progress.onProgress("archive", segments, segments);
+
+        // 4. In-memory copies and read models
+        recentMessageCache.anonymizeSender(email);
+        messageSearchService.anonymizeSender(email);
+        roomSummaryService.anonymizeSender(email);
+        return modified;
+    }
+
+    // One updateMulti for a chunk of bucket ids: every element sent by the user is rewritten in place
+    private long anonymizeBuckets(List<String> bucketIds, String email) {
+        Update update = new Update()
+                .set("messages.$[m].Sender", DELETED_USER_NAME)
+                .set("messages.$[m].ImageUrl", null) // Remove their specific profile pic from the message
+                .filterArray(Criteria.where("m.SenderId").is(email));
+        return mongoTemplate.updateMulti(new Query(Criteria.where("id").in(bucketIds)), update, MessageBucket.class)
+                .getModifiedCount();
+    }
+}
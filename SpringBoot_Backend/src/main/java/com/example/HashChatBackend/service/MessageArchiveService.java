@@ -0,0 +1,278 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageArchiveSegment;
+import com.example.HashChatBackend.model.MessageBucket;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves old message buckets out of MongoDB's working set into gzip compressed,
+ * immutable segments stored in GridFS.
+ * A bucket is archived once its newest message is older than max-age-days and the room
+ * has a newer bucket (so nothing is ever appended to it again). Each room's buckets are
+ * archived in bucket order, and a room stops at the first bucket that is too new or fails
+ * to archive, which keeps every archived seq below every seq still in a live bucket;
+ * MessageStoreService relies on that when a history cursor crosses into the archive.
+ */
+@Service
+public class MessageArchiveService {
+
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<>() {};
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.messages.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.messages.archive.max-age-days:30}")
+    private long maxAgeDays;
+
+    @Value("${app.messages.archive.batch-size:100}")
+    private int batchSize;
+
+    // segment id -> decompressed messages, so scrolling through archived history doesn't
+    // download and inflate the same segment for every page
+    private Cache<String, List<Message>> segmentCache;
+
+    @PostConstruct
+    public void init() {
+        segmentCache = Caffeine.newBuilder().maximumSize(64).build();
+    }
+
+    @Scheduled(fixedDelayString = "${app.messages.archive.interval-ms:3600000}", initialDelayString = "${app.messages.archive.initial-delay-ms:60000}")
+    public void archiveOldBuckets() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+        Query candidates = new Query(Criteria.where("lastTimeStamp").lt(cutoff))
+                .with(Sort.by(Sort.Direction.ASC, "lastTimeStamp"))
+                .limit(batchSize);
+        candidates.fields().include("roomId");
+
+        Set<String> roomIds = new LinkedHashSet<>();
+        for (MessageBucket candidate : mongoTemplate.find(candidates, MessageBucket.class)) {
+            roomIds.add(candidate.getRoomId());
+        }
+        int archived = 0;
+        for (String roomId : roomIds) {
+            if (archived >= batchSize) {
+                break;
+            }
+            archived += archiveRoom(roomId, cutoff, batchSize - archived);
+        }
+        if (archived > 0) {
+            System.out.println("Archived " + archived + " message buckets older than " + cutoff);
+        }
+    }
+
+    // Archives the room's oldest buckets in order, stopping at the first one that can't go
+    private int archiveRoom(String roomId, LocalDateTime cutoff, int limit) {
+        Query oldest = new Query(Criteria.where("roomId").is(roomId))
+                .with(Sort.by(Sort.Direction.ASC, "bucket"))
+                .limit(limit);
+        oldest.fields().include("bucket").include("lastTimeStamp");
+
+        int archived = 0;
+        for (MessageBucket bucket : mongoTemplate.find(oldest, MessageBucket.class)) {
+            if (bucket.getLastTimeStamp() == null || !bucket.getLastTimeStamp().isBefore(cutoff)) {
+                break;
+            }
+            try {
+                if (!archiveBucket(roomId, bucket.getBucket())) {
+                    break;
+                }
+                archived++;
+            } catch (Exception e) {
+                // Archiving a newer bucket now would leave this one's seqs between archive and live buckets
+                System.err.println("Failed to archive bucket " + bucket.getBucket() + " of room " + roomId
+                        + ", the room's later buckets wait for it: " + e.getMessage());
+                break;
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Archives a single bucket. Safe to re-run if a previous attempt died half way.
+     *
+     * @return true if the bucket was moved into a segment.
+     */
+    private boolean archiveBucket(String roomId, long bucketNumber) throws IOException {
+        // The room's newest bucket may still receive messages
+        Query newer = new Query(Criteria.where("roomId").is(roomId).and("bucket").gt(bucketNumber));
+        if (!mongoTemplate.exists(newer, MessageBucket.class)) {
+            return false;
+        }
+
+        Query bucketQuery = new Query(Criteria.where("roomId").is(roomId).and("bucket").is(bucketNumber));
+        MessageBucket bucket = mongoTemplate.findOne(bucketQuery, MessageBucket.class);
+        if (bucket == null) {
+            return false;
+        }
+
+        // A segment already exists if an earlier run stopped before removing the bucket
+        if (!mongoTemplate.exists(bucketQuery, MessageArchiveSegment.class)) {
+            byte[] compressed = compress(bucket.getMessages());
+            String fileId = storeFile(roomId, bucketNumber, compressed);
+
+            MessageArchiveSegment segment = new MessageArchiveSegment(null, roomId, bucketNumber,
+                    bucket.getMessages().size(), bucket.getMinSeq(), bucket.getMaxSeq(),
+                    bucket.getFirstTimeStamp(), bucket.getLastTimeStamp(),
+                    senderIds(bucket.getMessages()), fileId, compressed.length, LocalDateTime.now());
+            mongoTemplate.insert(segment);
+        }
+
+        mongoTemplate.remove(new Query(Criteria.where("id").is(bucket.getId())), MessageBucket.class);
+        return true;
+    }
+
+    /**
+     * Reads (and caches) the messages of an archived segment.
+     */
+    public List<Message> readSegment(MessageArchiveSegment segment) {
+        return segmentCache.get(segment.getId(), id -> {
+            GridFSFile file = gridFsTemplate.findOne(new Query(Criteria.where("_id").is(new ObjectId(segment.getFileId()))));
+            if (file == null) {
+                throw new IllegalStateException("Archive file " + segment.getFileId() + " is missing");
+            }
+            try (InputStream in = new GZIPInputStream(gridFsTemplate.getResource(file).getInputStream())) {
+                return objectMapper.readValue(in, MESSAGE_LIST);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read archive segment " + segment.getId(), e);
+            }
+        });
+    }
+
+    /**
+     * Rewrites every archived segment holding messages of the given sender with those messages
+     * anonymized. One segment is held in memory at a time.
+     *
+     * @return The number of segments rewritten.
+     */
+    public int anonymizeSender(String email) throws IOException {
+        // Segments archived before senderIds was recorded have to be opened to find out
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("senderIds").is(email),
+                Criteria.where("senderIds").exists(false)));
+        query.cursorBatchSize(50);
+
+        int rewritten = 0;
+        try (Stream<MessageArchiveSegment> segments = mongoTemplate.stream(query, MessageArchiveSegment.class)) {
+            for (MessageArchiveSegment segment : (Iterable<MessageArchiveSegment>) segments::iterator) {
+                List<Message> messages = new ArrayList<>(readSegment(segment));
+                boolean modified = false;
+                for (int i = 0; i < messages.size(); i++) {
+                    Message message = messages.get(i);
+                    boolean alreadyAnonymized = MessageAnonymizationService.DELETED_USER_NAME.equals(message.getSender()) && message.getImageUrl() == null;
+                    if (email.equals(message.getSenderId()) && !alreadyAnonymized) {
+                        // Copy: the cached list may be in use by a history request
+                        Message anonymized = new Message(message.getMessageId(), message.getSeq(), message.getSenderId(),
+                                MessageAnonymizationService.DELETED_USER_NAME, message.getContent(), null, message.getTimeStamp());
+                        messages.set(i, anonymized);
+                        modified = true;
+                    }
+                }
+
+                if (modified) {
+                    byte[] compressed = compress(messages);
+                    String fileId = storeFile(segment.getRoomId(), segment.getBucket(), compressed);
+                    mongoTemplate.updateFirst(new Query(Criteria.where("id").is(segment.getId())),
+                            new Update().set("fileId", fileId)
+                                    .set("compressedSize", compressed.length)
+                                    .set("senderIds", senderIds(messages)),
+                            MessageArchiveSegment.class);
+                    gridFsTemplate.delete(new Query(Criteria.where("_id").is(new ObjectId(segment.getFileId()))));
+                    segmentCache.invalidate(segment.getId());
+                    rewritten++;
+                } else if (segment.getSenderIds() == null) {
+                    mongoTemplate.updateFirst(new Query(Criteria.where("id").is(segment.getId())),
+                            new Update().set("senderIds", senderIds(messages)), MessageArchiveSegment.class);
+                }
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * Deletes archived segments matching {@code criteria} (and their GridFS files), at most
+     * {@code limit} of them.
+     *
+     * @return The number of segments deleted.
+     */
+    public int deleteSegments(Criteria criteria, int limit) {
+        Query query = new Query(criteria).limit(limit);
+        query.fields().include("fileId");
+        int deleted = 0;
+        for (MessageArchiveSegment segment : mongoTemplate.find(query, MessageArchiveSegment.class)) {
+            // Segment first: a leftover file is only wasted space, a segment without its file breaks history reads
+            mongoTemplate.remove(new Query(Criteria.where("id").is(segment.getId())), MessageArchiveSegment.class);
+            gridFsTemplate.delete(new Query(Criteria.where("_id").is(new ObjectId(segment.getFileId()))));
+            segmentCache.invalidate(segment.getId());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private String storeFile(String roomId, long bucketNumber, byte[] compressed) {
+        Document metadata = new Document("roomId", roomId).append("bucket", bucketNumber);
+        String fileName = "room-" + roomId + "-bucket-" + bucketNumber + ".json.gz";
+        return gridFsTemplate.store(new ByteArrayInputStream(compressed), fileName, "application/gzip", metadata).toHexString();
+    }
+
+    private Set<String> senderIds(List<Message> messages) {
+        Set<String> senderIds = new HashSet<>();
+        for (Message message : messages) {
+            if (message.getSenderId() != null) {
+                senderIds.add(message.getSenderId());
+            }
+        }
+        return senderIds;
+    }
+
+    private byte[] compress(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, messages);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageBucket;
+import com.example.HashChatBackend.model.Room;
+import com.example.HashChatBackend.utils.MessageIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves messages that are still embedded in old "rooms" documents into the
+ * "message_buckets" collection.
+ * Rooms are split lazily by MessageStoreService the first time they are touched,
+ * and all at once on startup when app.messages.migrate-on-startup=true.
+ */
+@Service
+public class MessageBucketMigrationService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageIdGenerator messageIdGenerator;
+
+    /**
+     * @return roomIds of all rooms that still carry an embedded messages array.
+     */
+    public List<String> findLegacyRoomIds() {
+        Query query = new Query(Criteria.where("messages.0").exists(true));
+        query.fields().include("roomId"); // don't pull the message arrays just to list the rooms
+        List<String> roomIds = new ArrayList<>();
+        for (Room room : mongoTemplate.find(query, Room.class)) {
+            roomIds.add(room.getRoomId());
+        }
+        return roomIds;
+    }
+
+    /**
+     * Splits the embedded history of a single room into buckets 0..n and clears it from the room.
+     * Buckets are upserted by (roomId, bucket) so re-running after a crash is safe.
+     * Callers must make sure nothing is appended to the room while this runs.
+     *
+     * @param roomId The user provided roomId.
+     * @param bucketSize Messages per bucket.
+     * @return The number of messages migrated (0 if the room had nothing embedded).
+     */
+    public int migrateRoom(String roomId, int bucketSize) {
+        Query legacyRoom = new Query(Criteria.where("roomId").is(roomId).and("messages.0").exists(true));
+        Room room = mongoTemplate.findOne(legacyRoom, Room.class);
+        if (room == null) {
+            return 0;
+        }
+
+        List<Message> messages = room.getMessages();
+        // Legacy messages never had an id or sequence number, they become 1..n of the room
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message.getMessageId() == null) {
+                message.setMessageId(messageIdGenerator.nextId());
+            }
+            message.setSeq(i + 1);
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MessageBucket.class);
+        for (int start = 0, bucket = 0; start < messages.size(); start += bucketSize, bucket++) {
+            List<Message> chunk = new ArrayList<>(messages.subList(start, Math.min(messages.size(), start + bucketSize)));
+            Update update = new Update()
+                    .set("messages", chunk)
+                    .set("count", chunk.size())
+                    .set("minSeq", chunk.getFirst().getSeq())
+                    .set("maxSeq", chunk.getLast().getSeq())
+                    .set("firstTimeStamp", chunk.getFirst().getTimeStamp())
+                    .set("lastTimeStamp", chunk.getLast().getTimeStamp());
+            bulk.upsert(new Query(Criteria.where("roomId").is(roomId).and("bucket").is(bucket)), update);
+        }
+        bulk.execute();
+
+        // Only clear the embedded array once every bucket is written
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(room.getId())),
+                new Update().set("messages", new ArrayList<>()), Room.class);
+
+        System.out.println("Migrated " + messages.size() + " messages of room " + roomId + " into buckets");
+        return messages.size();
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.MessageDeadLetter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parks placed messages that the write path gave up on (write-behind buffer, journal
+ * projection) in the message_dead_letters collection, so one bad batch neither holds up
+ * the messages behind it nor gets lost.
+ * Parked messages are written to their bucket again periodically, through filterUnwritten
+ * so a message that did make it is not duplicated, with a growing delay between attempts.
+ */
+@Service
+public class MessageDeadLetterService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.messages.dead-letter.replay-batch-size:500}")
+    private int replayBatchSize;
+
+    // Delay before the first replay, doubled after every failed one (capped at a day)
+    @Value("${app.messages.dead-letter.replay-backoff-ms:60000}")
+    private long replayBackoffMs;
+
+    private Counter parked;
+    private Counter replayed;
+
+    @PostConstruct
+    public void init() {
+        parked = Counter.builder("hashchat.messages.deadletter").tag("result", "parked").register(meterRegistry);
+        replayed = Counter.builder("hashchat.messages.deadletter").tag("result", "replayed").register(meterRegistry);
+    }
+
+    /**
+     * Stores messages that could not be written.
+     *
+     * @return false if they could not be stored either (MongoDB unreachable); the caller keeps them.
+     */
+    public boolean park(List<MessageStoreService.PendingMessage> batch, String source, String error) {
+        LocalDateTime now = LocalDateTime.now();
+        List<MessageDeadLetter> letters = new ArrayList<>(batch.size());
+        for (MessageStoreService.PendingMessage pending : batch) {
+            letters.add(MessageDeadLetter.builder()
+                    .id(pending.getMessage().getMessageId()) // parking the same message twice keeps one copy
+                    .roomId(pending.getRoomId())
+                    .bucket(pending.getBucket())
+                    .message(pending.getMessage())
+                    .source(source)
+                    .lastError(error)
+                    .nextReplayAt(now.plus(Duration.ofMillis(replayBackoffMs)))
+                    .createdAt(now)
+                    .build());
+        }
+        try {
+            for (MessageDeadLetter letter : letters) {
+                mongoTemplate.save(letter);
+            }
+            parked.increment(letters.size());
+            System.err.println("Parked " + letters.size() + " messages from " + source + " as dead letters: " + error);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to park " + letters.size() + " messages as dead letters: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.messages.dead-letter.replay-interval-ms:60000}")
+    public void replay() {
+        Query due = new Query(Criteria.where("nextReplayAt").lte(LocalDateTime.now()))
+                .with(Sort.by("createdAt"))
+                .limit(replayBatchSize);
+        List<MessageDeadLetter> letters;
+        try {
+            letters = mongoTemplate.find(due, MessageDeadLetter.class);
+        } catch (Exception e) {
+            return; // MongoDB still down, next run tries again
+        }
+        if (letters.isEmpty()) {
+            return;
+        }
+
+        List<MessageStoreService.PendingMessage> batch = new ArrayList<>(letters.size());
+        for (MessageDeadLetter letter : letters) {
+            batch.add(toPending(letter));
+        }
+        try {
+            write(batch);
+            remove(letters);
+            return;
+        } catch (Exception e) {
+            System.err.println("Replaying " + letters.size() + " dead-lettered messages failed, trying them one by one: " + e.getMessage());
+        }
+
+        // One bad message must not keep the others parked
+        List<MessageDeadLetter> written = new ArrayList<>();
+        for (MessageDeadLetter letter : letters) {
+            try {
+                write(List.of(toPending(letter)));
+                written.add(letter);
+            } catch (Exception e) {
+                int attempts = letter.getReplayAttempts() + 1;
+                long backoff = Math.min(replayBackoffMs << Math.min(attempts, 10), Duration.ofDays(1).toMillis());
+                mongoTemplate.updateFirst(new Query(Criteria.where("id").is(letter.getId())), new Update()
+                        .set("replayAttempts", attempts)
+                        .set("lastError", e.getMessage())
+                        .set("nextReplayAt", LocalDateTime.now().plus(Duration.ofMillis(backoff))),
+                        MessageDeadLetter.class);
+            }
+        }
+        remove(written);
+    }
+
+    private void write(List<MessageStoreService.PendingMessage> batch) {
+        messageStoreService.writeBatch(messageStoreService.filterUnwritten(batch));
+        roomSummaryService.recordBatch(batch);
+    }
+
+    private void remove(List<MessageDeadLetter> letters) {
+        if (letters.isEmpty()) {
+            return;
+        }
+        List<String> ids = letters.stream().map(MessageDeadLetter::getId).toList();
+        mongoTemplate.remove(new Query(Criteria.where("id").in(ids)), MessageDeadLetter.class);
+        replayed.increment(letters.size());
+        System.out.println("Wrote " + letters.size() + " dead-lettered messages to their buckets");
+    }
+
+    private static MessageStoreService.PendingMessage toPending(MessageDeadLetter letter) {
+        return new MessageStoreService.PendingMessage(letter.getRoomId(), letter.getBucket(), letter.getMessage());
+    }
+}
@@ -0,0 +1,537 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Optional journal mode (app.messages.journal.enabled=true): every message is appended to a
+ * local, memory-mapped, append-only log before it is broadcast, and MongoDB is filled from
+ * that log by a background projector instead of MessageWriteBehindService.
+ *
+ * The log is split into fixed-size segment files. A record is [length][crc32][json], a zero
+ * length means "continue in the next segment". The position up to which records have been
+ * written to MongoDB is kept in a checkpoint file; on startup every record after it is
+ * replayed into MongoDB before the first message can be placed.
+ * A batch the projector can't write after max-attempts is parked with MessageDeadLetterService
+ * and projection moves on; a corrupt record is skipped. Either way the other rooms' messages
+ * are not held up behind it.
+ */
+@Service
+public class MessageJournalService {
+
+    private static final int HEADER_BYTES = 8; // int length + int crc32
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "projected.position";
+
+    // sun.misc.Unsafe.invokeCleaner, the only way to unmap a MappedByteBuffer right away (null if unavailable)
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Journal segments will be unmapped by the garbage collector: " + e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    // When appended records are forced to disk. ALWAYS: before append returns,
+    // INTERVAL: every fsync-interval-ms, NONE: whenever the OS writes the pages back
+    private enum FsyncPolicy { ALWAYS, INTERVAL, NONE }
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
+    @Autowired
+    private MessageDeadLetterService messageDeadLetterService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.messages.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.messages.journal.dir:journal}")
+    private String directory;
+
+    @Value("${app.messages.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${app.messages.journal.fsync:interval}")
+    private String fsync;
+
+    @Value("${app.messages.journal.projection.batch-size:500}")
+    private int batchSize;
+
+    // How long the projector sleeps when it has caught up with the writers
+    @Value("${app.messages.journal.projection.idle-ms:20}")
+    private long idleMs;
+
+    // Attempts at projecting a batch before it is parked as dead letters
+    @Value("${app.messages.journal.projection.max-attempts:5}")
+    private int maxAttempts;
+
+    // Delay before the first retry, doubled for every further attempt (capped at 64x)
+    @Value("${app.messages.journal.projection.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    /**
+     * What is stored per message: enough to write it into its bucket again.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class JournalRecord {
+        private String roomId;
+        private long bucket;
+        private Message message;
+    }
+
+    private Path dir;
+    private long segmentSize;
+    private FsyncPolicy fsyncPolicy;
+
+    // Map: segment index -> mapped file. Positions are global: index * segmentSize + offset
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+    // Writer state, guarded by "this"
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private int writeOffset;
+    private boolean unforced;
+
+    private volatile long writePosition; // end of the last complete record
+    private volatile long projectedPosition; // everything before this is in MongoDB
+
+    private Thread projector;
+    private volatile boolean running;
+
+    private Timer appendTimer;
+    private Counter projectionFailures;
+    private Counter deadLettered;
+    private Counter skippedRecords;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        segmentSize = segmentSizeMb * 1024L * 1024L;
+        fsyncPolicy = FsyncPolicy.valueOf(fsync.trim().toUpperCase(Locale.ROOT));
+
+        appendTimer = Timer.builder("hashchat.messages.journal.append")
+                .description("Time taken to append one message to the journal")
+                .register(meterRegistry);
+        projectionFailures = Counter.builder("hashchat.messages.journal.projection.failed")
+                .description("Journal batches that could not be written to MongoDB (retried)")
+                .register(meterRegistry);
+        deadLettered = Counter.builder("hashchat.messages.journal.projection.deadlettered")
+                .description("Journaled messages parked as dead letters after every projection attempt failed")
+                .register(meterRegistry);
+        skippedRecords = Counter.builder("hashchat.messages.journal.projection.skipped")
+                .description("Corrupt journal records skipped by the projector")
+                .register(meterRegistry);
+        Gauge.builder("hashchat.messages.journal.lag.bytes", this, j -> j.writePosition - j.projectedPosition)
+                .description("Journal bytes not yet written to MongoDB")
+                .register(meterRegistry);
+
+        openSegments();
+        replay();
+
+        running = true;
+        projector = new Thread(this::projectLoop, "message-journal-projector");
+        projector.setDaemon(true);
+        projector.start();
+    }
+
+    /**
+     * Appends a placed message to the journal. Once this returns the message is in the
+     * page cache (and on disk with fsync=always) and will reach MongoDB even if the
+     * process dies right after.
+     */
+    public void append(MessageStoreService.PendingMessage pending) {
+        long start = System.nanoTime();
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(new JournalRecord(pending.getRoomId(), pending.getBucket(), pending.getMessage()));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not serialize message for the journal", e);
+        }
+        if (HEADER_BYTES + payload.length > segmentSize) {
+            throw new RuntimeException("Message too large for the journal");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (this) {
+            if (writeOffset + HEADER_BYTES + payload.length > segmentSize) {
+                rollSegment();
+            }
+            int offset = writeOffset;
+            writeBuffer.putInt(offset + 4, (int) crc.getValue());
+            writeBuffer.put(offset + HEADER_BYTES, payload);
+            writeBuffer.putInt(offset, payload.length); // length last: a torn record reads as zero length or bad crc
+            writeOffset += HEADER_BYTES + payload.length;
+            writePosition = writeSegment * segmentSize + writeOffset;
+
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                writeBuffer.force(offset, HEADER_BYTES + payload.length);
+            } else {
+                unforced = true;
+            }
+        }
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Scheduled(fixedDelayString = "${app.messages.journal.fsync-interval-ms:100}")
+    public void forceIfDue() {
+        if (!enabled || fsyncPolicy != FsyncPolicy.INTERVAL) {
+            return;
+        }
+        synchronized (this) {
+            if (unforced) {
+                writeBuffer.force();
+                unforced = false;
+            }
+        }
+    }
+
+    // Maps every segment file left by the previous run
+    private void openSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(index, map(index));
+                }
+            }
+        }
+    }
+
+    // Writes every record after the checkpoint to MongoDB and positions the writer after the last valid record
+    private void replay() throws IOException {
+        long position = readCheckpoint();
+        if (!segments.isEmpty()) {
+            position = Math.max(position, segments.firstKey() * segmentSize);
+        }
+
+        int replayed = 0;
+        List<JournalRecord> batch = new ArrayList<>(batchSize);
+        while (true) {
+            long next = read(position, Long.MAX_VALUE, batch);
+            if (next == position) {
+                break;
+            }
+            if (!batch.isEmpty()) {
+                // The previous run may have written these before it could save the checkpoint
+                List<MessageStoreService.PendingMessage> pending = toPending(batch);
+                messageStoreService.writeBatch(messageStoreService.filterUnwritten(pending));
+                roomSummaryService.recordBatch(pending);
+                replayed += batch.size();
+                batch.clear();
+            }
+            position = next;
+            writeCheckpoint(position);
+        }
+        projectedPosition = position;
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journaled messages into MongoDB");
+        }
+
+        // New records go right after the last valid one; anything behind it is a torn write
+        writeSegment = position / segmentSize;
+        writeOffset = (int) (position % segmentSize);
+        writeBuffer = segments.get(writeSegment);
+        if (writeBuffer == null) {
+            writeBuffer = map(writeSegment);
+            segments.put(writeSegment, writeBuffer);
+        }
+        for (int i = writeOffset; i < segmentSize; i++) {
+            writeBuffer.put(i, (byte) 0);
+        }
+        for (Long index : new ArrayList<>(segments.keySet())) {
+            if (index > writeSegment) {
+                deleteSegment(index);
+            }
+        }
+        writePosition = position;
+        deleteProjectedSegments(position);
+    }
+
+    private void projectLoop() {
+        List<JournalRecord> batch = new ArrayList<>(batchSize);
+        long position = projectedPosition;
+        int attempts = 0;
+        while (running || position < writePosition) {
+            long next = read(position, writePosition, batch);
+            if (batch.isEmpty()) {
+                if (next == position && position < writePosition) {
+                    // Everything before writePosition was written whole by this process, so
+                    // a record that can't be read here is corrupt and would stall projection
+                    next = skipRecord(position);
+                    skippedRecords.increment();
+                } else if (next == position) {
+                    sleep(idleMs);
+                }
+                position = next;
+                continue;
+            }
+
+            List<MessageStoreService.PendingMessage> pending = toPending(batch);
+            try {
+                // A failed unordered bulk write may have stored part of the batch
+                messageStoreService.writeBatch(attempts > 0 ? messageStoreService.filterUnwritten(pending) : pending);
+                roomSummaryService.recordBatch(pending);
+            } catch (Exception e) {
+                attempts++;
+                projectionFailures.increment();
+                System.err.println("Failed to project " + batch.size() + " journaled messages (attempt " + attempts + "): " + e.getMessage());
+                batch.clear();
+                if (!running) {
+                    break; // the rest is replayed on the next start
+                }
+                // Parking needs MongoDB too; while that fails as well, keep retrying
+                if (attempts < maxAttempts || !messageDeadLetterService.park(pending, "journal", e.getMessage())) {
+                    sleep(retryBackoffMs << Math.min(attempts - 1, 6));
+                    continue;
+                }
+                deadLettered.increment(pending.size());
+            }
+            attempts = 0;
+            batch.clear();
+            position = next;
+            projectedPosition = position;
+            try {
+                writeCheckpoint(position);
+                deleteProjectedSegments(position);
+            } catch (IOException e) {
+                System.err.println("Failed to save journal checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    // Position after the record at {@code position}, or the start of the next segment when
+    // even its length can't be trusted
+    private long skipRecord(long position) {
+        long index = position / segmentSize;
+        int offset = (int) (position % segmentSize);
+        int length = segments.get(index).getInt(offset);
+        long next = length > 0 && offset + HEADER_BYTES + (long) length <= segmentSize
+                ? position + HEADER_BYTES + length
+                : (index + 1) * segmentSize;
+        System.err.println("Skipping corrupt journal record at " + position + ", continuing at " + next);
+        return next;
+    }
+
+    /**
+     * Reads up to batch-size records starting at {@code from}, not going past {@code to}.
+     * Stops at the first record that is incomplete or fails its crc check.
+     *
+     * @return The position after the last record read.
+     */
+    private long read(long from, long to, List<JournalRecord> out) {
+        long position = from;
+        while (position < to && out.size() < batchSize) {
+            long index = position / segmentSize;
+            int offset = (int) (position % segmentSize);
+            MappedByteBuffer segment = segments.get(index);
+            if (segment == null) {
+                break;
+            }
+
+            int length = offset + HEADER_BYTES <= segmentSize ? segment.getInt(offset) : 0;
+            if (length == 0) {
+                if (!segments.containsKey(index + 1)) {
+                    break;
+                }
+                position = (index + 1) * segmentSize;
+                continue;
+            }
+            if (length < 0 || offset + HEADER_BYTES + (long) length > segmentSize) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            segment.get(offset + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+                System.err.println("Journal record at " + position + " failed its crc check");
+                break;
+            }
+            try {
+                out.add(objectMapper.readValue(payload, JournalRecord.class));
+            } catch (IOException e) {
+                System.err.println("Unreadable journal record at " + position + ": " + e.getMessage());
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private List<MessageStoreService.PendingMessage> toPending(List<JournalRecord> records) {
+        List<MessageStoreService.PendingMessage> pending = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            pending.add(new MessageStoreService.PendingMessage(record.getRoomId(), record.getBucket(), record.getMessage()));
+        }
+        return pending;
+    }
+
+    // Caller holds the lock
+    private void rollSegment() {
+        // The unused tail of the old segment stays zero, which readers take as "next segment"
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            writeBuffer.force();
+        }
+        try {
+            MappedByteBuffer next = map(writeSegment + 1);
+            segments.put(writeSegment + 1, next);
+            writeSegment++;
+            writeBuffer = next;
+            writeOffset = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment", e);
+        }
+    }
+
+    private MappedByteBuffer map(long index) throws IOException {
+        Path file = dir.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    // Segments that lie completely before the projected position are no longer needed
+    private void deleteProjectedSegments(long position) throws IOException {
+        long current = position / segmentSize;
+        for (Long index : new ArrayList<>(segments.keySet())) {
+            if (index < current) {
+                deleteSegment(index);
+            }
+        }
+    }
+
+    // Only called by the thread that reads old segments (replay, then the projector), and never
+    // for the segment being written, so nobody can touch the buffer after it is unmapped
+    private void deleteSegment(long index) throws IOException {
+        MappedByteBuffer buffer = segments.remove(index);
+        if (buffer != null) {
+            unmap(buffer);
+        }
+        Files.deleteIfExists(dir.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX)));
+    }
+
+    // A MappedByteBuffer is otherwise only unmapped once it is garbage collected, which keeps
+    // deleted segment files taking up disk space and address space until then
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Failed to unmap journal segment: " + e.getMessage());
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, Long.toString(position), StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lets the projector catch up before the application shuts down.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        try {
+            projector.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            writeBuffer.force();
+        }
+        System.out.println("Message journal closed at position " + writePosition + ", projected up to " + projectedPosition);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.MessageBucket;
+import com.example.HashChatBackend.model.Room;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Enforces per-room retention (Room.retentionMaxAgeDays / retentionMaxMessages).
+ *
+ * Age limits are mostly handled by MongoDB: every bucket of such a room carries an expireAt
+ * date and the TTL index removes buckets whose newest message has expired. The sweeper only
+ * trims buckets that are partly expired, plus archived segments.
+ * Count limits are swept: whole buckets below the cut are deleted in batches, and expired
+ * messages of the boundary bucket are filtered out by an update pipeline that also recomputes
+ * the bucket's count, seq range and timestamps. Room documents are only read with
+ * a projection, never with their legacy messages array.
+ */
+@Service
+public class MessageRetentionService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
+    @Value("${app.retention.enabled:true}")
+    private boolean enabled;
+
+    // Documents deleted per delete command
+    @Value("${app.retention.batch-size:500}")
+    private int batchSize;
+
+    // Upper bound on documents deleted per room per sweep, the rest is left for the next one
+    @Value("${app.retention.max-deletes-per-room:10000}")
+    private int maxDeletesPerRoom;
+
+    /**
+     * Changes a room's retention and re-dates its existing buckets on the server.
+     *
+     * @return The updated room, or null if it doesn't exist.
+     */
+    public Room updateRetention(String roomId, Integer maxAgeDays, Long maxMessages) {
+        if (maxAgeDays != null && maxAgeDays < 1) {
+            throw new IllegalArgumentException("maxAgeDays must be at least 1");
+        }
+        if (maxMessages != null && maxMessages < 1) {
+            throw new IllegalArgumentException("maxMessages must be at least 1");
+        }
+        if (!roomService.roomExists(roomId)) {
+            return null;
+        }
+        Room room = roomService.updateRetention(roomId, maxAgeDays, maxMessages);
+
+        // expireAt = lastTimeStamp + max age, computed by MongoDB for every bucket of the room
+        Query roomBuckets = new Query(Criteria.where("roomId").is(roomId));
+        if (maxAgeDays != null) {
+            AggregationUpdate redate = AggregationUpdate.update()
+                    .set("expireAt").toValue(ArithmeticOperators.valueOf("lastTimeStamp").add(TimeUnit.DAYS.toMillis(maxAgeDays)));
+            mongoTemplate.updateMulti(roomBuckets, redate, MessageBucket.class);
+        } else {
+            mongoTemplate.updateMulti(roomBuckets, new Update().unset("expireAt"), MessageBucket.class);
+        }
+        System.out.println("Retention of room " + roomId + " set to maxAgeDays=" + maxAgeDays + ", maxMessages=" + maxMessages);
+        return room;
+    }
+
+    @Scheduled(fixedDelayString = "${app.retention.sweep-interval-ms:300000}", initialDelayString = "${app.retention.initial-delay-ms:120000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        Query withRetention = new Query(new Criteria().orOperator(
+                Criteria.where("retentionMaxAgeDays").ne(null),
+                Criteria.where("retentionMaxMessages").ne(null)));
+        withRetention.fields().include("roomId").include("retentionMaxAgeDays").include("retentionMaxMessages");
+
+        long removed = 0;
+        try (Stream<Room> rooms = mongoTemplate.stream(withRetention, Room.class)) {
+            for (Room room : (Iterable<Room>) rooms::iterator) {
+                try {
+                    removed += sweepRoom(room);
+                } catch (Exception e) {
+                    System.err.println("Retention sweep failed for room " + room.getRoomId() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (removed > 0) {
+            System.out.println("Retention sweep removed or trimmed " + removed + " message documents");
+        }
+    }
+
+    private long sweepRoom(Room room) {
+        String roomId = room.getRoomId();
+        long changed = 0;
+        LocalDateTime cutoff = null;
+        Long keepFromSeq = null;
+
+        if (room.getRetentionMaxAgeDays() != null) {
+            cutoff = LocalDateTime.now().minusDays(room.getRetentionMaxAgeDays());
+            // Whole buckets are normally gone through the TTL index already; this covers the
+            // TTL monitor's delay and buckets written before the room had a retention age
+            changed += deleteInBatches(Criteria.where("roomId").is(roomId).and("lastTimeStamp").lt(cutoff));
+            changed += trimMessages(Criteria.where("roomId").is(roomId).and("firstTimeStamp").lt(cutoff),
+                    new Document("$gte", List.of("$$m.TimeStamp", toDate(cutoff))));
+            changed += messageArchiveService.deleteSegments(
+                    Criteria.where("roomId").is(roomId).and("lastTimeStamp").lt(cutoff), maxDeletesPerRoom);
+        }
+
+        if (room.getRetentionMaxMessages() != null) {
+            long lastSeq = messageStoreService.getLastSeq(roomId);
+            if (lastSeq > room.getRetentionMaxMessages()) {
+                keepFromSeq = lastSeq - room.getRetentionMaxMessages() + 1;
+                changed += deleteInBatches(Criteria.where("roomId").is(roomId).and("maxSeq").lt(keepFromSeq));
+                changed += trimMessages(Criteria.where("roomId").is(roomId).and("minSeq").lt(keepFromSeq),
+                        new Document("$gte", List.of("$$m.Seq", keepFromSeq)));
+                changed += messageArchiveService.deleteSegments(
+                        Criteria.where("roomId").is(roomId).and("maxSeq").lt(keepFromSeq), maxDeletesPerRoom);
+            }
+        }
+
+        if (changed > 0) {
+            // In-memory copies must not show what was just deleted
+            recentMessageCache.evictRoom(roomId);
+            messageSearchService.expire(roomId, keepFromSeq, cutoff);
+        }
+        // Also after TTL removals, which the sweep doesn't see
+        roomSummaryService.recount(roomId);
+        return changed;
+    }
+
+    // Deletes matching buckets by id, batch-size at a time, so no single delete runs for long
+    private long deleteInBatches(Criteria criteria) {
+        long deleted = 0;
+        while (deleted < maxDeletesPerRoom) {
+            Query batch = new Query(criteria).limit(batchSize);
+            batch.fields().include("id");
+            List<String> ids = new ArrayList<>(batchSize);
+            for (MessageBucket bucket : mongoTemplate.find(batch, MessageBucket.class)) {
+                ids.add(bucket.getId());
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+            deleted += mongoTemplate.remove(new Query(Criteria.where("id").in(ids)), MessageBucket.class).getDeletedCount();
+        }
+        return deleted;
+    }
+
+    // Keeps only the messages ($$m) matching keep in buckets that are partly expired, then
+    // recomputes count, minSeq/maxSeq and the timestamps from what is left, in one atomic
+    // update per bucket, so history queries and hasMore never see stale bounds
+    private long trimMessages(Criteria buckets, Document keep) {
+        AggregationUpdate trim = AggregationUpdate.update()
+                .set("messages").toValue(expression("$filter",
+                        new Document("input", "$messages").append("as", "m").append("cond", keep)))
+                // Each set(...) is its own $set stage, so these see the filtered messages
+                .set("count").toValue(expression("$size", "$messages"))
+                .set("minSeq").toValue(expression("$min", "$messages.Seq"))
+                .set("maxSeq").toValue(expression("$max", "$messages.Seq"))
+                .set("firstTimeStamp").toValue(expression("$min", "$messages.TimeStamp"))
+                .set("lastTimeStamp").toValue(expression("$max", "$messages.TimeStamp"));
+        return mongoTemplate.updateMulti(new Query(buckets), trim, MessageBucket.class).getModifiedCount();
+    }
+
+    private static AggregationExpression expression(String operator, Object argument) {
+        return context -> new Document(operator, argument);
+    }
+
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
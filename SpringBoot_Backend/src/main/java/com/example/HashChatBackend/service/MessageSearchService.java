@@ -0,0 +1,400 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import com.example.HashChatBackend.model.MessageSearchPage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the newest messages of recently active rooms.
+ * Each room's index holds at most messages-per-room messages (the oldest ones drop out as
+ * new ones are sent) and at most max-rooms rooms are indexed, least recently used ones are
+ * evicted, so memory stays bounded however much history is stored.
+ * Messages are added as they are sent (ChatController, and broadcasts from other nodes);
+ * a room's older messages are loaded from MongoDB the first time the room is searched.
+ * Archived history is never loaded into the index. Results say when older history was left
+ * out (complete = false) and how much of the room was searched.
+ *
+ * Query syntax: words must all match (AND), "quoted words" must appear next to each other
+ * in that order, and a trailing * matches any word starting with the prefix (hel*); a prefix
+ * expands to the max-prefix-expansions words found in the most messages.
+ * Results are ranked with BM25, newest first on equal score.
+ */
+@Service
+public class MessageSearchService {
+
+    private static final Pattern QUERY_PART = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.search.max-rooms:200}")
+    private long maxRooms;
+
+    @Value("${app.search.messages-per-room:1000}")
+    private int messagesPerRoom;
+
+    // How many words a prefix query may expand to, the ones in the most messages
+    @Value("${app.search.max-prefix-expansions:64}")
+    private int maxPrefixExpansions;
+
+    // roomId -> index of the room's newest messages
+    private Cache<String, RoomIndex> rooms;
+
+    private static class RoomIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // term -> (seq -> positions of the term in that message), sorted so prefixes are a range
+        private final TreeMap<String, Map<Long, int[]>> postings = new TreeMap<>();
+        // seq -> indexed message and its length in words, oldest first
+        private final TreeMap<Long, Message> messages = new TreeMap<>();
+        private final Map<Long, Integer> lengths = new HashMap<>();
+        private long totalLength;
+        // Stored history has been loaded (guarded by the index itself, not the lock)
+        private boolean loaded;
+        // Older messages of the room exist that are not in the index
+        private volatile boolean truncated;
+    }
+
+    @PostConstruct
+    public void init() {
+        rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, rooms, "searchRooms");
+    }
+
+    // One part of a query: a single word, a prefix or a phrase
+    private static class Clause {
+        private final List<String> terms;
+        private final boolean prefix;
+
+        Clause(List<String> terms, boolean prefix) {
+            this.terms = terms;
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Adds a message to its room's index. Messages already in the index (same seq) are skipped,
+     * so live indexing and loading a room's stored history can overlap.
+     */
+    public void index(String roomId, Message message) {
+        add(rooms.get(roomId, k -> new RoomIndex()), message);
+    }
+
+    private void add(RoomIndex index, Message message) {
+        if (message.getContent() == null || message.getSeq() <= 0) {
+            return;
+        }
+        List<String> tokens = tokenize(message.getContent());
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            positions.computeIfAbsent(tokens.get(i), k -> new ArrayList<>()).add(i);
+        }
+
+        index.lock.writeLock().lock();
+        try {
+            // Older than everything in a full index: it would be the next one to go
+            if (index.messages.size() >= messagesPerRoom && message.getSeq() < index.messages.firstKey()) {
+                index.truncated = true;
+                return;
+            }
+            if (index.messages.putIfAbsent(message.getSeq(), message) != null) {
+                return;
+            }
+            index.lengths.put(message.getSeq(), tokens.size());
+            index.totalLength += tokens.size();
+            for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+                int[] termPositions = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                index.postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(message.getSeq(), termPositions);
+            }
+            while (index.messages.size() > messagesPerRoom) {
+                remove(index, index.messages.firstKey());
+                index.truncated = true;
+            }
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private void remove(RoomIndex index, long seq) {
+        Message message = index.messages.remove(seq);
+        if (message == null) {
+            return;
+        }
+        index.totalLength -= index.lengths.remove(seq);
+        for (String term : new HashSet<>(tokenize(message.getContent()))) {
+            Map<Long, int[]> postings = index.postings.get(term);
+            if (postings != null) {
+                postings.remove(seq);
+                if (postings.isEmpty()) {
+                    index.postings.remove(term);
+                }
+            }
+        }
+    }
+
+    // Loads the room's newest stored messages the first time it is searched
+    private RoomIndex loadedIndex(String roomId) {
+        RoomIndex index = rooms.get(roomId, k -> new RoomIndex());
+        synchronized (index) {
+            if (!index.loaded) {
+                // Live messages keep going into the index meanwhile; duplicates are skipped
+                MessageHistoryPage stored = messageStoreService.getMessagesBefore(roomId, null, messagesPerRoom);
+                for (Message message : stored.getMessages()) {
+                    add(index, message);
+                }
+                if (stored.isHasMore()) {
+                    index.truncated = true;
+                }
+                index.loaded = true;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Searches one room.
+     *
+     * @param page 0 = best matches.
+     */
+    public MessageSearchPage search(String roomId, String query, int page, int size) {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) {
+            return new MessageSearchPage(new ArrayList<>(), page, size, 0, true, 0, null);
+        }
+        RoomIndex index = loadedIndex(roomId);
+
+        List<Map.Entry<Long, Double>> ranked;
+        List<Message> results = new ArrayList<>();
+        int searchedMessages;
+        LocalDateTime searchedFrom;
+        index.lock.readLock().lock();
+        try {
+            searchedMessages = index.messages.size();
+            searchedFrom = index.messages.isEmpty() ? null : index.messages.firstEntry().getValue().getTimeStamp();
+            Map<Long, Double> scores = null;
+            for (Clause clause : clauses) {
+                Map<Long, Double> clauseScores = score(index, clause);
+                if (scores == null) {
+                    scores = clauseScores;
+                } else {
+                    // AND: keep messages that matched every clause
+                    Map<Long, Double> combined = new HashMap<>();
+                    for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                        Double other = clauseScores.get(entry.getKey());
+                        if (other != null) {
+                            combined.put(entry.getKey(), entry.getValue() + other);
+                        }
+                    }
+                    scores = combined;
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed()));
+            int from = (int) Math.min(ranked.size(), (long) page * size);
+            int to = Math.min(ranked.size(), from + size);
+            for (Map.Entry<Long, Double> entry : ranked.subList(from, to)) {
+                results.add(index.messages.get(entry.getKey()));
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        return new MessageSearchPage(results, page, size, ranked.size(), !index.truncated, searchedMessages, searchedFrom);
+    }
+
+    /**
+     * Updates the sender name of indexed messages of a deleted user (the message objects are
+     * shared with the search results).
+     */
+    public void anonymizeSender(String email) {
+        for (RoomIndex index : rooms.asMap().values()) {
+            index.lock.writeLock().lock();
+            try {
+                for (Message message : index.messages.values()) {
+                    if (email.equals(message.getSenderId())) {
+                        message.setSender(MessageAnonymizationService.DELETED_USER_NAME);
+                        message.setImageUrl(null);
+                    }
+                }
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes messages deleted by a room's retention policy: those with a seq below
+     * {@code keepFromSeq} or sent before {@code cutoff} (either may be null).
+     */
+    public void expire(String roomId, Long keepFromSeq, LocalDateTime cutoff) {
+        RoomIndex index = rooms.getIfPresent(roomId);
+        if (index == null) {
+            return;
+        }
+        index.lock.writeLock().lock();
+        try {
+            Set<Long> expired = new HashSet<>();
+            for (Message message : index.messages.values()) {
+                boolean tooOld = cutoff != null && message.getTimeStamp() != null && message.getTimeStamp().isBefore(cutoff);
+                if (tooOld || (keepFromSeq != null && message.getSeq() < keepFromSeq)) {
+                    expired.add(message.getSeq());
+                }
+            }
+            for (Long seq : expired) {
+                remove(index, seq);
+            }
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the read lock. Returns seq -> score for the messages matching the clause
+    private Map<Long, Double> score(RoomIndex index, Clause clause) {
+        Map<Long, Double> scores = new HashMap<>();
+        if (clause.prefix) {
+            String prefix = clause.terms.getFirst();
+            NavigableMap<String, Map<Long, int[]>> expansions = index.postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+            Collection<Map<Long, int[]>> expanded = expansions.values();
+            if (expansions.size() > maxPrefixExpansions) {
+                // Keep the words found in the most messages rather than the first ones alphabetically
+                List<Map<Long, int[]>> byFrequency = new ArrayList<>(expanded);
+                byFrequency.sort(Comparator.comparingInt((Map<Long, int[]> postings) -> postings.size()).reversed());
+                expanded = byFrequency.subList(0, maxPrefixExpansions);
+            }
+            for (Map<Long, int[]> postings : expanded) {
+                addScores(index, postings, scores);
+            }
+            return scores;
+        }
+        if (clause.terms.size() == 1) {
+            Map<Long, int[]> postings = index.postings.get(clause.terms.getFirst());
+            if (postings != null) {
+                addScores(index, postings, scores);
+            }
+            return scores;
+        }
+
+        // Phrase: term i must be at position p + i. Scored like a term that occurs once per match
+        List<Map<Long, int[]>> termPostings = new ArrayList<>();
+        for (String term : clause.terms) {
+            Map<Long, int[]> postings = index.postings.get(term);
+            if (postings == null) {
+                return scores;
+            }
+            termPostings.add(postings);
+        }
+        Map<Long, int[]> phraseMatches = new LinkedHashMap<>();
+        Map<Long, int[]> rarest = Collections.min(termPostings, Comparator.comparingInt(Map::size));
+        for (Long seq : rarest.keySet()) {
+            int matches = 0;
+            for (int start : termPostings.getFirst().getOrDefault(seq, new int[0])) {
+                boolean match = true;
+                for (int i = 1; i < termPostings.size() && match; i++) {
+                    int[] positions = termPostings.get(i).get(seq);
+                    match = positions != null && contains(positions, start + i);
+                }
+                if (match) {
+                    matches++;
+                }
+            }
+            if (matches > 0) {
+                phraseMatches.put(seq, new int[matches]);
+            }
+        }
+        addScores(index, phraseMatches, scores);
+        return scores;
+    }
+
+    private void addScores(RoomIndex index, Map<Long, int[]> postings, Map<Long, Double> scores) {
+        int documents = index.messages.size();
+        double averageLength = Math.max(1, (double) index.totalLength / Math.max(1, documents));
+        double idf = Math.log(1 + (documents - postings.size() + 0.5) / (postings.size() + 0.5));
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            int tf = entry.getValue().length;
+            int length = index.lengths.getOrDefault(entry.getKey(), 0);
+            double score = idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+            scores.merge(entry.getKey(), score, Double::sum);
+        }
+    }
+
+    private static boolean contains(int[] sorted, int value) {
+        return Arrays.binarySearch(sorted, value) >= 0;
+    }
+
+    private List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        if (query == null) {
+            return clauses;
+        }
+        Matcher matcher = QUERY_PART.matcher(query);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                List<String> terms = tokenize(matcher.group(1));
+                if (!terms.isEmpty()) {
+                    clauses.add(new Clause(terms, false));
+                }
+                continue;
+            }
+            String word = matcher.group(2);
+            boolean prefix = word.endsWith("*");
+            List<String> terms = tokenize(prefix ? word.substring(0, word.length() - 1) : word);
+            for (int i = 0; i < terms.size(); i++) {
+                clauses.add(new Clause(List.of(terms.get(i)), prefix && i == terms.size() - 1));
+            }
+        }
+        return clauses;
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token.length() > MAX_TOKEN_LENGTH ? token.substring(0, MAX_TOKEN_LENGTH) : token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageArchiveSegment;
+import com.example.HashChatBackend.model.MessageBucket;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import com.example.HashChatBackend.model.Room;
+import com.example.HashChatBackend.model.RoomSummary;
+import com.example.HashChatBackend.model.SeqCounter;
+import com.example.HashChatBackend.utils.MessageIdGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Stores room messages in fixed-size MessageBucket documents.
+ * Every write is a $push upsert into the room's current bucket, so the cost of
+ * sending a message no longer depends on how long the room's history is.
+ * Placing a message (picking its bucket) is done in memory and is separate from
+ * writing it, which lets MessageWriteBehindService batch the writes.
+ *
+ * Seqs come from the room's SeqCounter in MongoDB, leased in blocks (SeqCounterService), and
+ * a message's bucket follows from its seq, so several nodes can place messages for the same
+ * room without handing out a seq twice or disagreeing about buckets. Each node leases
+ * seq-block-size seqs at a time, so MongoDB is only asked once per block, also with a
+ * clustered fan-out. Nodes then number from different blocks: seqs are unique and clients
+ * order by them, but two nodes' messages are ordered by block, not by when they were sent.
+ */
+@Service
+public class MessageStoreService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageBucketMigrationService migrationService;
+
+    @Autowired
+    private MessageIdGenerator messageIdGenerator;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private SeqCounterService seqCounterService;
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    @Value("${app.messages.bucket-size:100}")
+    private int bucketSize;
+
+    // Seqs leased from MongoDB at a time, per node and room
+    @Value("${app.messages.seq-block-size:100}")
+    private int seqBlockSize;
+
+    // Rooms nobody has written to or read from for this long drop their cursor; it is seeded
+    // from MongoDB again on next use and the unused part of its seq lease is given back.
+    @Value("${app.messages.cursor-idle-minutes:30}")
+    private long cursorIdleMinutes;
+
+    // roomId -> the room's bucket layout and this node's current seq lease,
+    // seeded from MongoDB on first use. Each room has its own lock, so rooms never contend.
+    private Cache<String, BucketCursor> cursors;
+
+    private static class BucketCursor {
+        private boolean seeded;
+        private boolean retired; // evicted; whoever still holds it looks the room up again
+        private long baseSeq; // from SeqCounter: seq baseSeq goes into bucket baseBucket
+        private long baseBucket;
+        private long nextSeq; // next seq of the lease
+        private long leaseEnd; // last seq of the lease; nextSeq > leaseEnd means none left
+    }
+
+    @PostConstruct
+    public void initCursors() {
+        cursors = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(cursorIdleMinutes))
+                // Runs as part of the eviction, so no new cursor for the room exists yet
+                .evictionListener((String roomId, BucketCursor cursor, RemovalCause cause) -> {
+                    if (cursor != null) {
+                        synchronized (cursor) {
+                            cursor.retired = true;
+                        }
+                    }
+                })
+                // Runs afterwards, off the cache's locks, since it talks to MongoDB
+                .removalListener((String roomId, BucketCursor cursor, RemovalCause cause) -> {
+                    if (roomId != null && cursor != null && cause.wasEvicted()) {
+                        giveBackLease(roomId, cursor);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Gives the unused seqs of every lease back on shutdown, so a restart doesn't leave gaps.
+     */
+    @PreDestroy
+    public void releaseLeases() {
+        cursors.asMap().forEach((roomId, cursor) -> {
+            synchronized (cursor) {
+                cursor.retired = true;
+            }
+            giveBackLease(roomId, cursor);
+        });
+    }
+
+    private void giveBackLease(String roomId, BucketCursor cursor) {
+        long leaseEnd;
+        long lastUsed;
+        synchronized (cursor) {
+            if (!cursor.seeded) {
+                return;
+            }
+            leaseEnd = cursor.leaseEnd;
+            lastUsed = cursor.nextSeq - 1;
+        }
+        try {
+            seqCounterService.giveBack(SeqCounterService.roomKey(roomId), leaseEnd, lastUsed);
+        } catch (Exception e) {
+            // The seqs are skipped instead, which readers handle like deleted messages
+            System.err.println("Failed to give back the seq lease of room " + roomId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A message that has been given its place in a room's history but may not be written yet.
+     */
+    public static class PendingMessage {
+        private final String roomId;
+        private final long bucket;
+        private final Message message;
+
+        public PendingMessage(String roomId, long bucket, Message message) {
+            this.roomId = roomId;
+            this.bucket = bucket;
+            this.message = message;
+        }
+
+        public String getRoomId() { return roomId; }
+        public long getBucket() { return bucket; }
+        public Message getMessage() { return message; }
+    }
+
+    /**
+     * Appends a message to the end of a room's history and writes it immediately.
+     *
+     * @param roomId The user provided roomId.
+     * @param message The message to store.
+     */
+    public void append(String roomId, Message message) {
+        writeBatch(List.of(place(roomId, message)));
+    }
+
+    /**
+     * Gives the message its MessageId and the room's next sequence number, and with it its
+     * bucket, without writing anything. MongoDB is only asked for a new block of seqs when
+     * the current lease runs out.
+     * Must be called before the message is broadcast.
+     */
+    public PendingMessage place(String roomId, Message message) {
+        message.setMessageId(messageIdGenerator.nextId());
+        return withCursor(roomId, cursor -> {
+            if (cursor.nextSeq > cursor.leaseEnd) {
+                SeqCounter counter = seqCounterService.lease(SeqCounterService.roomKey(roomId), seqBlockSize);
+                cursor.leaseEnd = counter.getLastSeq();
+                cursor.nextSeq = counter.getLastSeq() - seqBlockSize + 1;
+            }
+            long seq = cursor.nextSeq++;
+            message.setSeq(seq);
+            return new PendingMessage(roomId, bucketOf(cursor, seq), message);
+        });
+    }
+
+    private long bucketOf(BucketCursor cursor, long seq) {
+        return cursor.baseBucket + (seq - cursor.baseSeq) / bucketSize;
+    }
+
+    /**
+     * Writes placed messages with one bulk request: one $push/$each upsert per target bucket.
+     * Messages for the same bucket are pushed in the order they appear in the batch.
+     */
+    public void writeBatch(List<PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, List<PendingMessage>> byBucket = new LinkedHashMap<>();
+        for (PendingMessage pending : batch) {
+            byBucket.computeIfAbsent(pending.getRoomId() + "#" + pending.getBucket(), k -> new ArrayList<>()).add(pending);
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MessageBucket.class);
+        for (List<PendingMessage> group : byBucket.values()) {
+            PendingMessage first = group.getFirst();
+            List<Message> messages = new ArrayList<>(group.size());
+            LocalDateTime firstTimeStamp = null;
+            LocalDateTime lastTimeStamp = null;
+            long minSeq = Long.MAX_VALUE;
+            long maxSeq = Long.MIN_VALUE;
+            for (PendingMessage pending : group) {
+                Message message = pending.getMessage();
+                messages.add(message);
+                minSeq = Math.min(minSeq, message.getSeq());
+                maxSeq = Math.max(maxSeq, message.getSeq());
+                if (firstTimeStamp == null || message.getTimeStamp().isBefore(firstTimeStamp)) {
+                    firstTimeStamp = message.getTimeStamp();
+                }
+                if (lastTimeStamp == null || message.getTimeStamp().isAfter(lastTimeStamp)) {
+                    lastTimeStamp = message.getTimeStamp();
+                }
+            }
+
+            Query query = new Query(Criteria.where("roomId").is(first.getRoomId()).and("bucket").is(first.getBucket()));
+            Update update = new Update()
+                    .inc("count", messages.size())
+                    .min("minSeq", minSeq)
+                    .max("maxSeq", maxSeq)
+                    .min("firstTimeStamp", firstTimeStamp)
+                    .max("lastTimeStamp", lastTimeStamp);
+            update.push("messages").each(messages.toArray());
+
+            // Rooms with a retention age get a TTL date, MongoDB removes the bucket once it passes
+            Room room = roomService.getRoomByRoomId(first.getRoomId()); // cached
+            if (room != null && room.getRetentionMaxAgeDays() != null) {
+                update.max("expireAt", lastTimeStamp.plusDays(room.getRetentionMaxAgeDays()));
+            }
+            bulk.upsert(query, update);
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Drops the messages of a batch that are already stored in their bucket, so a batch
+     * that may have been partly written before (journal replay, retried bulk writes) can be
+     * passed to writeBatch again without duplicating messages.
+     */
+    public List<PendingMessage> filterUnwritten(List<PendingMessage> batch) {
+        Map<String, List<PendingMessage>> byBucket = new LinkedHashMap<>();
+        for (PendingMessage pending : batch) {
+            byBucket.computeIfAbsent(pending.getRoomId() + "#" + pending.getBucket(), k -> new ArrayList<>()).add(pending);
+        }
+
+        List<PendingMessage> unwritten = new ArrayList<>(batch.size());
+        for (List<PendingMessage> group : byBucket.values()) {
+            PendingMessage first = group.getFirst();
+            Query query = new Query(Criteria.where("roomId").is(first.getRoomId()).and("bucket").is(first.getBucket()));
+            query.fields().include("messages.MessageId");
+            MessageBucket stored = mongoTemplate.findOne(query, MessageBucket.class);
+
+            Set<String> storedIds = new HashSet<>();
+            if (stored != null && stored.getMessages() != null) {
+                for (Message message : stored.getMessages()) {
+                    storedIds.add(message.getMessageId());
+                }
+            }
+            for (PendingMessage pending : group) {
+                if (!storedIds.contains(pending.getMessage().getMessageId())) {
+                    unwritten.add(pending);
+                }
+            }
+        }
+        return unwritten;
+    }
+
+    /**
+     * Keyset pagination over a room's history: the newest {@code limit} messages with a
+     * sequence number below {@code beforeSeq} (or the newest messages when it is null).
+     * Buckets are walked newest first through the (roomId, minSeq) index, so a page
+     * costs the same no matter how deep into the history it is. Once the live buckets
+     * run out the walk continues into the room's archived segments.
+     */
+    public MessageHistoryPage getMessagesBefore(String roomId, Long beforeSeq, int limit) {
+        ensureMigrated(roomId);
+        long before = beforeSeq != null ? beforeSeq : Long.MAX_VALUE;
+        List<Message> newestFirst = new ArrayList<>(limit + 1);
+        // Lowest seq still held by a live bucket; a bucket that is being archived can briefly
+        // exist in both places, so archived messages at or above it are skipped
+        long liveFloor = before;
+
+        Query query = new Query(Criteria.where("roomId").is(roomId).and("minSeq").lt(before))
+                .with(Sort.by(Sort.Direction.DESC, "minSeq"));
+        query.cursorBatchSize(2);
+        try (Stream<MessageBucket> buckets = mongoTemplate.stream(query, MessageBucket.class)) {
+            Iterator<MessageBucket> iterator = buckets.iterator();
+            // One extra message tells us whether there is an older page
+            while (iterator.hasNext() && newestFirst.size() <= limit) {
+                MessageBucket bucket = iterator.next();
+                liveFloor = Math.min(liveFloor, bucket.getMinSeq());
+                collectBefore(bucket.getMessages(), before, newestFirst, limit);
+            }
+        }
+
+        // Archived segments all hold older seqs than the live buckets (they are archived oldest first)
+        if (newestFirst.size() <= limit) {
+            Query archived = new Query(Criteria.where("roomId").is(roomId).and("minSeq").lt(liveFloor))
+                    .with(Sort.by(Sort.Direction.DESC, "minSeq"));
+            archived.cursorBatchSize(2);
+            try (Stream<MessageArchiveSegment> segments = mongoTemplate.stream(archived, MessageArchiveSegment.class)) {
+                Iterator<MessageArchiveSegment> iterator = segments.iterator();
+                while (iterator.hasNext() && newestFirst.size() <= limit) {
+                    collectBefore(messageArchiveService.readSegment(iterator.next()), liveFloor, newestFirst, limit);
+                }
+            }
+        }
+
+        boolean hasMore = newestFirst.size() > limit;
+        if (hasMore) {
+            newestFirst.removeLast();
+        }
+        Collections.reverse(newestFirst);
+        Long nextCursor = hasMore ? newestFirst.getFirst().getSeq() : null;
+        return new MessageHistoryPage(newestFirst, nextCursor, hasMore);
+    }
+
+    // Adds the messages of one bucket/segment below `before` to `newestFirst`, newest first,
+    // stopping at limit + 1 messages
+    private void collectBefore(List<Message> source, long before, List<Message> newestFirst, int limit) {
+        List<Message> candidates = new ArrayList<>();
+        for (Message message : source) {
+            if (message.getSeq() < before) {
+                candidates.add(message);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(Message::getSeq).reversed());
+        for (Message message : candidates) {
+            if (newestFirst.size() > limit) {
+                break;
+            }
+            newestFirst.add(message);
+        }
+    }
+
+    /**
+     * @return The sequence number of the newest message placed in the room, including
+     * messages still waiting in the write-behind buffer (0 for an empty room). With a
+     * clustered fan-out this includes messages placed on other nodes.
+     */
+    public long getLastSeq(String roomId) {
+        if (clusterFanout.isClustered()) {
+            ensureMigrated(roomId);
+            SeqCounter counter = seqCounterService.get(SeqCounterService.roomKey(roomId));
+            return counter != null ? counter.getLastSeq() : 0;
+        }
+        return withCursor(roomId, cursor -> cursor.nextSeq - 1);
+    }
+
+    /**
+     * @return The lowest sequence number still stored for the room, in an archived segment or
+     * a live bucket (0 if nothing is stored). Retention moves it up over time.
+     */
+    public long getMinSeq(String roomId) {
+        ensureMigrated(roomId);
+        Query lowest = new Query(Criteria.where("roomId").is(roomId))
+                .with(Sort.by(Sort.Direction.ASC, "minSeq"))
+                .limit(1);
+        lowest.fields().include("minSeq");
+        // Archived segments all hold older seqs than the live buckets
+        MessageArchiveSegment segment = mongoTemplate.findOne(lowest, MessageArchiveSegment.class);
+        if (segment != null) {
+            return segment.getMinSeq();
+        }
+        MessageBucket bucket = mongoTemplate.findOne(lowest, MessageBucket.class);
+        return bucket != null ? bucket.getMinSeq() : 0;
+    }
+
+    /**
+     * Makes sure any history still embedded in the room document has been moved into buckets.
+     */
+    public void ensureMigrated(String roomId) {
+        withCursor(roomId, cursor -> null);
+    }
+
+    // Runs the action under the room's seeded cursor, looking the cursor up again if it was
+    // evicted between the lookup and taking its lock
+    private <T> T withCursor(String roomId, Function<BucketCursor, T> action) {
+        while (true) {
+            BucketCursor cursor = cursors.get(roomId, k -> new BucketCursor());
+            synchronized (cursor) {
+                if (cursor.retired) {
+                    continue;
+                }
+                seedIfNeeded(roomId, cursor);
+                return action.apply(cursor);
+            }
+        }
+    }
+
+    private void seedIfNeeded(String roomId, BucketCursor cursor) {
+        if (cursor.seeded) {
+            return;
+        }
+        // Legacy history goes first so it ends up in buckets 0..n, before anything new
+        migrationService.migrateRoom(roomId, bucketSize);
+
+        String key = SeqCounterService.roomKey(roomId);
+        SeqCounter counter = seqCounterService.get(key);
+        if (counter == null) {
+            counter = createCounter(roomId, key);
+        }
+        cursor.baseSeq = counter.getBaseSeq();
+        cursor.baseBucket = counter.getBaseBucket();
+        // No lease yet: the first place() takes one
+        cursor.nextSeq = counter.getLastSeq() + 1;
+        cursor.leaseEnd = counter.getLastSeq();
+        cursor.seeded = true;
+    }
+
+    // First use of a room since seqs moved to SeqCounter: numbering carries on after the
+    // stored history, in a fresh bucket after every bucket (live or archived) the room has
+    private SeqCounter createCounter(String roomId, String key) {
+        Query latest = new Query(Criteria.where("roomId").is(roomId))
+                .with(Sort.by(Sort.Direction.DESC, "bucket"))
+                .limit(1);
+        latest.fields().include("bucket").include("maxSeq");
+        MessageBucket top = mongoTemplate.findOne(latest, MessageBucket.class);
+        MessageArchiveSegment topArchived = mongoTemplate.findOne(latest, MessageArchiveSegment.class);
+
+        long lastSeq = 0;
+        long nextBucket = 0;
+        if (top != null) {
+            lastSeq = top.getMaxSeq();
+            nextBucket = top.getBucket() + 1;
+        }
+        if (topArchived != null) {
+            lastSeq = Math.max(lastSeq, topArchived.getMaxSeq());
+            nextBucket = Math.max(nextBucket, topArchived.getBucket() + 1);
+        }
+
+        // Retention may have deleted every bucket of an idle room; the summary still knows
+        // the newest seq, so numbering carries on instead of starting again at 1
+        Query summaryQuery = new Query(Criteria.where("roomId").is(roomId));
+        summaryQuery.fields().include("lastMessageSeq");
+        RoomSummary summary = mongoTemplate.findOne(summaryQuery, RoomSummary.class);
+        if (summary != null && summary.getLastMessageSeq() > lastSeq) {
+            lastSeq = summary.getLastMessageSeq();
+        }
+        return seqCounterService.create(key, lastSeq, nextBucket);
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.HashChatBackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists chat messages after they have been broadcast.
+ * Messages are placed in their bucket right away (in memory), queued in a bounded
+ * buffer and written by a single background thread in batches through BulkOperations.
+ * A batch is flushed when it reaches flush-size messages or flush-interval-ms after its
+ * first message, whichever comes first.
+ * A batch that fails to write is retried with backoff (retries skip what a failed bulk write
+ * did store), then parked with MessageDeadLetterService. Messages have already been broadcast
+ * when they get here, so a batch is never dropped: while it can be neither written nor parked
+ * the flusher keeps retrying, and senders are slowed down by the full buffer.
+ */
+@Service
+public class MessageWriteBehindService {
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
+    @Autowired
+    private MessageDeadLetterService messageDeadLetterService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.messages.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${app.messages.write-behind.flush-size:500}")
+    private int flushSize;
+
+    @Value("${app.messages.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    // How long a sender waits for room in a full buffer before writing its message itself
+    @Value("${app.messages.write-behind.offer-timeout-ms:200}")
+    private long offerTimeoutMs;
+
+    // Attempts at writing a batch before it is parked as dead letters
+    @Value("${app.messages.write-behind.max-attempts:5}")
+    private int maxAttempts;
+
+    // Delay before the first retry, doubled for every further attempt (capped at 64x)
+    @Value("${app.messages.write-behind.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    private BlockingQueue<MessageStoreService.PendingMessage> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Timer flushTimer;
+    private DistributionSummary batchSize;
+    private Counter overflowWrites;
+    private Counter failedMessages;
+    private Counter retries;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+
+        Gauge.builder("hashchat.messages.writebehind.queue.depth", queue, BlockingQueue::size)
+                .description("Messages waiting to be written to MongoDB")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("hashchat.messages.writebehind.flush")
+                .description("Time taken to write one batch of messages")
+                .register(meterRegistry);
+        batchSize = DistributionSummary.builder("hashchat.messages.writebehind.batch.size")
+                .register(meterRegistry);
+        overflowWrites = Counter.builder("hashchat.messages.writebehind.overflow")
+                .description("Messages written by the sender because the buffer stayed full")
+                .register(meterRegistry);
+        failedMessages = Counter.builder("hashchat.messages.writebehind.failed")
+                .description("Messages parked as dead letters after every write attempt failed")
+                .register(meterRegistry);
+        retries = Counter.builder("hashchat.messages.writebehind.retries")
+                .description("Batch writes retried after a failure")
+                .register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "message-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues a placed message for persistence. Blocks for up to offer-timeout-ms when the
+     * buffer is full, then falls back to writing the message on the calling thread, which
+     * slows the sender down instead of dropping the message. Such a message can reach its
+     * bucket before older ones still in the buffer; nothing depends on the order inside a
+     * bucket (readers order by Seq), only on every message getting there. If that write
+     * fails too, the sender waits for room in the buffer.
+     *
+     * @param pending A message placed by MessageStoreService.place that has just been broadcast.
+     */
+    public void enqueue(MessageStoreService.PendingMessage pending) {
+        if (running) {
+            try {
+                if (queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            overflowWrites.increment();
+            try {
+                messageStoreService.writeBatch(List.of(pending));
+                roomSummaryService.recordBatch(List.of(pending));
+                return;
+            } catch (Exception e) {
+                System.err.println("Overflow write failed, waiting for room in the write-behind buffer: " + e.getMessage());
+            }
+            try {
+                queue.put(pending);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        write(List.of(pending));
+    }
+
+    private void flushLoop() {
+        List<MessageStoreService.PendingMessage> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                MessageStoreService.PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep collecting until the batch is full or the flush interval is up
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= flushSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    MessageStoreService.PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Write what we have, stop() drains the rest
+                write(batch);
+                return;
+            }
+            write(batch);
+            batch = new ArrayList<>(flushSize);
+        }
+    }
+
+    private void write(List<MessageStoreService.PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // writeBatch is idempotent only through filterUnwritten, a failed bulk write may have stored part of the batch
+                messageStoreService.writeBatch(attempt == 1 ? batch : messageStoreService.filterUnwritten(batch));
+                break;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts && messageDeadLetterService.park(batch, "write-behind", e.getMessage())) {
+                    failedMessages.increment(batch.size());
+                    return;
+                }
+                long backoff = retryBackoffMs << Math.min(attempt - 1, 6);
+                retries.increment();
+                System.err.println("Failed to persist " + batch.size() + " messages (attempt " + attempt
+                        + "), retrying in " + backoff + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        roomSummaryService.recordBatch(batch);
+        batchSize.record(batch.size());
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Flushes everything still buffered before the application shuts down.
+     */
+    @PreDestroy
+    public void stop() {
+        // No interrupt: the flusher notices within flush-interval-ms and an interrupt
+        // could abort a bulk write that is in flight
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything the flusher did not get to is written here
+        List<MessageStoreService.PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        write(remaining);
+        System.out.println("Message write-behind buffer flushed on shutdown");
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.HashChatBackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-node fan-out over a capped MongoDB collection (app.cluster.fanout=mongo).
+ *
+ * Every node inserts the broadcasts it publishes into the collection and follows it with a
+ * tailable cursor, handing what other nodes wrote to its local simple broker. MongoDB is
+ * already shared by all nodes, so adding a node needs no extra infrastructure. A capped
+ * collection keeps insertion order and never grows, and old entries are overwritten once
+ * it is full.
+ * The payload is serialized once by the publishing node and delivered to remote
+ * subscribers as the same JSON bytes, and announced as a RemoteBroadcastEvent so this
+ * node's caches pick up messages placed elsewhere.
+ * Publishing doesn't wait for MongoDB: entries go into a bounded queue that a background
+ * thread inserts in batches. When the queue is full the entry is dropped and counted
+ * (hashchat.cluster.fanout.failures, reason=queue-full); remote clients catch up through resume.
+ *
+ * When the cursor has to be reopened it only reads entries whose _id (created on the
+ * publishing node) is at most resume-skew-ms older than the newest entry seen, and skips
+ * the ones it already delivered. Node clocks must agree within resume-skew-ms.
+ */
+@Service
+@ConditionalOnProperty(name = "app.cluster.fanout", havingValue = "mongo")
+public class MongoClusterFanout implements ClusterFanout {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.cluster.mongo.collection:cluster_fanout}")
+    private String collectionName;
+
+    @Value("${app.cluster.mongo.size-mb:64}")
+    private long sizeMb;
+
+    // How long the tailing cursor waits on the server for new entries
+    @Value("${app.cluster.mongo.await-ms:1000}")
+    private long awaitMs;
+
+    // How far before the newest entry seen a reopened cursor starts reading
+    @Value("${app.cluster.mongo.resume-skew-ms:5000}")
+    private long resumeSkewMs;
+
+    // Entries waiting to be inserted; beyond this they are dropped
+    @Value("${app.cluster.mongo.publish-queue-capacity:10000}")
+    private int publishQueueCapacity;
+
+    @Value("${app.cluster.mongo.publish-batch-size:200}")
+    private int publishBatchSize;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private MongoCollection<Document> collection;
+    private Thread tailer;
+    private Thread publisher;
+    private volatile boolean running;
+
+    private BlockingQueue<Document> outbox;
+
+    private Counter published;
+    private Counter received;
+    private Counter failures;
+    private Counter queueFull;
+    private Counter insertFailures;
+
+    // Tailer thread only: ids read within the resume window, and the newest _id time seen
+    private final LinkedHashMap<ObjectId, Boolean> seen = new LinkedHashMap<>();
+    private long newestSeenMillis;
+
+    @PostConstruct
+    public void start() {
+        if (!mongoTemplate.collectionExists(collectionName)) {
+            try {
+                mongoTemplate.createCollection(collectionName,
+                        CollectionOptions.empty().capped().size(sizeMb * 1024 * 1024));
+            } catch (Exception e) {
+                // Another node created it at the same time
+                System.out.println("Cluster fan-out collection already exists: " + e.getMessage());
+            }
+        }
+        collection = mongoTemplate.getCollection(collectionName);
+
+        published = Counter.builder("hashchat.cluster.fanout").tag("direction", "published").register(meterRegistry);
+        received = Counter.builder("hashchat.cluster.fanout").tag("direction", "received").register(meterRegistry);
+        failures = Counter.builder("hashchat.cluster.fanout.failures").tag("reason", "cursor").register(meterRegistry);
+        queueFull = Counter.builder("hashchat.cluster.fanout.failures").tag("reason", "queue-full").register(meterRegistry);
+        insertFailures = Counter.builder("hashchat.cluster.fanout.failures").tag("reason", "insert").register(meterRegistry);
+        outbox = new ArrayBlockingQueue<>(publishQueueCapacity);
+        Gauge.builder("hashchat.cluster.fanout.queue", outbox, BlockingQueue::size).register(meterRegistry);
+
+        running = true;
+        tailer = new Thread(this::tail, "cluster-fanout-tailer");
+        tailer.setDaemon(true);
+        tailer.start();
+        publisher = new Thread(this::publishLoop, "cluster-fanout-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+        System.out.println("Cluster fan-out over MongoDB collection " + collectionName + " started (node " + nodeId + ")");
+    }
+
+    @Override
+    public boolean isClustered() {
+        return true;
+    }
+
+    @Override
+    public void publish(String destination, Object payload) {
+        // Local subscribers don't wait for the round trip through MongoDB
+        messagingTemplate.convertAndSend(destination, payload);
+        Document entry;
+        try {
+            // Serialized now, so later changes to the payload object don't leak into the entry
+            entry = new Document("node", nodeId)
+                    .append("destination", destination)
+                    .append("payload", new Binary(objectMapper.writeValueAsBytes(payload)))
+                    .append("createdAt", new Date());
+        } catch (Exception e) {
+            insertFailures.increment();
+            System.err.println("Cluster fan-out publish to " + destination + " failed: " + e.getMessage());
+            return;
+        }
+        if (!outbox.offer(entry)) {
+            // Only the other nodes miss this broadcast; their clients catch up through resume
+            queueFull.increment();
+        }
+    }
+
+    // Inserts queued entries in batches, in publish order
+    private void publishLoop() {
+        List<Document> batch = new ArrayList<>(publishBatchSize);
+        while (running || !outbox.isEmpty()) {
+            try {
+                Document first = outbox.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outbox.drainTo(batch, publishBatchSize - 1);
+                collection.insertMany(batch);
+                published.increment(batch.size());
+            } catch (InterruptedException e) {
+                if (!running) {
+                    Thread.interrupted(); // keep draining what is left
+                }
+            } catch (Exception e) {
+                insertFailures.increment(batch.size());
+                System.err.println("Cluster fan-out insert of " + batch.size() + " entries failed: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void tail() {
+        // Start at the end: entries written before this node came up are not replayed
+        startAtNewest();
+        while (running) {
+            // Tailable cursors read in natural (insertion) order; the _id filter only decides
+            // which entries come back. ObjectIds from nodes with different clocks are not
+            // ordered, hence the skew margin and the seen ids.
+            try (MongoCursor<Document> cursor = collection.find(resumeFilter())
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(awaitMs, TimeUnit.MILLISECONDS)
+                    .noCursorTimeout(true)
+                    .iterator()) {
+                while (running && cursor.hasNext()) {
+                    Document entry = cursor.next();
+                    if (!markSeen(entry.getObjectId("_id"))) {
+                        continue;
+                    }
+                    if (!nodeId.equals(entry.getString("node"))) {
+                        deliver(entry);
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    failures.increment();
+                    System.err.println("Cluster fan-out cursor lost, reopening: " + e.getMessage());
+                }
+            }
+            // A tailable cursor on an empty collection is closed right away, don't spin on it
+            pause(running ? 100 : 0);
+        }
+    }
+
+    private void deliver(Document entry) {
+        try {
+            String destination = entry.getString("destination");
+            byte[] payload = entry.get("payload", Binary.class).getData();
+            messagingTemplate.convertAndSend(destination, payload,
+                    Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON));
+            received.increment();
+            eventPublisher.publishEvent(new RemoteBroadcastEvent(destination, payload));
+        } catch (Exception e) {
+            failures.increment();
+            System.err.println("Cluster fan-out delivery failed: " + e.getMessage());
+        }
+    }
+
+    // Marks what is already in the resume window as seen, so it isn't delivered
+    private void startAtNewest() {
+        Document newest = collection.find()
+                .sort(new Document("$natural", -1))
+                .limit(1)
+                .first();
+        newestSeenMillis = newest != null ? newest.getObjectId("_id").getDate().getTime() : System.currentTimeMillis();
+        for (Document entry : collection.find(resumeFilter()).projection(new Document("_id", 1))) {
+            markSeen(entry.getObjectId("_id"));
+        }
+    }
+
+    private Bson resumeFilter() {
+        return Filters.gte("_id", idAt(newestSeenMillis - resumeSkewMs));
+    }
+
+    // @return false if the entry was read before
+    private boolean markSeen(ObjectId id) {
+        if (seen.putIfAbsent(id, Boolean.TRUE) != null) {
+            return false;
+        }
+        newestSeenMillis = Math.max(newestSeenMillis, id.getDate().getTime());
+        // Ids older than the resume window can't be read again; roughly insertion ordered
+        long floor = newestSeenMillis - resumeSkewMs - 1000;
+        Iterator<ObjectId> oldest = seen.keySet().iterator();
+        while (oldest.hasNext() && oldest.next().getDate().getTime() < floor) {
+            oldest.remove();
+        }
+        return true;
+    }
+
+    // The smallest ObjectId created at that time (ObjectIds start with their creation second)
+    private static ObjectId idAt(long millis) {
+        return new ObjectId(String.format("%08x%016x", Math.max(0, millis / 1000), 0L));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (tailer != null) {
+            tailer.interrupt();
+        }
+        if (publisher != null) {
+            try {
+                publisher.join(TimeUnit.SECONDS.toMillis(5)); // sends what is still queued
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
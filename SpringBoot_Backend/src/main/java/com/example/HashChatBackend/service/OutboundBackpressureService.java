@@ -0,0 +1,348 @@
+package com.example.HashChatBackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded outbound queue per WebSocket session.
+ *
+ * Frames for a client are queued per session and written by that session's own drain task
+ * (a virtual thread), so the clientOutbound channel never waits on a slow socket. When a
+ * session's queue is full the configured policy decides what happens:
+ *  - drop-oldest: the oldest queued MESSAGE frame is dropped
+ *  - coalesce: like drop-oldest, and a queued presence update (.../activeUsers) is replaced by
+ *    the newer one for the same room instead of being queued twice
+ *  - disconnect: the session is closed
+ * With the drop policies a client that keeps dropping frames is disconnected after max-drops.
+ * Only MESSAGE frames are dropped or coalesced; CONNECTED, RECEIPT, ERROR and heartbeats always go out.
+ */
+@Service
+public class OutboundBackpressureService {
+
+    public enum Policy { DROP_OLDEST, COALESCE, DISCONNECT }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.websocket.outbound.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${app.websocket.outbound.policy:coalesce}")
+    private String policyName;
+
+    // Frames a session may drop before it is disconnected (0 = never disconnect)
+    @Value("${app.websocket.outbound.max-drops:1000}")
+    private long maxDrops;
+
+    private Policy policy;
+
+    // sessionId -> queue of that session
+    private final Map<String, BoundedSession> sessions = new ConcurrentHashMap<>();
+
+    private ExecutorService drainers;
+
+    private Counter dropped;
+    private Counter coalesced;
+    private Counter disconnects;
+
+    @PostConstruct
+    public void init() {
+        policy = Policy.valueOf(policyName.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        drainers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-outbound-", 0).factory());
+
+        dropped = Counter.builder("hashchat.websocket.outbound.dropped").register(meterRegistry);
+        coalesced = Counter.builder("hashchat.websocket.outbound.coalesced").register(meterRegistry);
+        disconnects = Counter.builder("hashchat.websocket.outbound.disconnects").register(meterRegistry);
+        Gauge.builder("hashchat.websocket.outbound.sessions", sessions, Map::size).register(meterRegistry);
+        Gauge.builder("hashchat.websocket.outbound.queued", this, s -> s.totalQueued()).register(meterRegistry);
+        Gauge.builder("hashchat.websocket.outbound.max-queue-depth", this, s -> s.maxQueued()).register(meterRegistry);
+        System.out.println("WebSocket outbound queues: capacity " + queueCapacity + ", policy " + policy);
+    }
+
+    /**
+     * Decorator factory for WebSocketTransportRegistration: the handler gets the bounded session
+     * in place of the container's session.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BoundedSession bounded = new BoundedSession(session);
+                sessions.put(session.getId(), bounded);
+                super.afterConnectionEstablished(bounded);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                BoundedSession bounded = sessions.remove(session.getId());
+                if (bounded != null) {
+                    bounded.discard();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Queue state of every open session, deepest queue first.
+     */
+    public List<Map<String, Object>> getSessionStats(int limit) {
+        List<BoundedSession> snapshot = new ArrayList<>(sessions.values());
+        snapshot.sort(Comparator.comparingInt(BoundedSession::depth).reversed());
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (BoundedSession session : snapshot.subList(0, Math.min(limit, snapshot.size()))) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("sessionId", session.getId());
+            entry.put("queued", session.depth());
+            entry.put("maxQueued", session.maxDepth);
+            entry.put("sent", session.sent);
+            entry.put("dropped", session.dropped);
+            entry.put("coalesced", session.coalesced);
+            stats.add(entry);
+        }
+        return stats;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    private long totalQueued() {
+        long total = 0;
+        for (BoundedSession session : sessions.values()) {
+            total += session.depth();
+        }
+        return total;
+    }
+
+    private int maxQueued() {
+        int max = 0;
+        for (BoundedSession session : sessions.values()) {
+            max = Math.max(max, session.depth());
+        }
+        return max;
+    }
+
+    private static class Frame {
+        private WebSocketMessage<?> message;
+        private final boolean droppable;
+        private final String coalesceKey; // destination + subscription of a presence update, else null
+
+        Frame(WebSocketMessage<?> message, boolean droppable, String coalesceKey) {
+            this.message = message;
+            this.droppable = droppable;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    /**
+     * A session whose sendMessage only queues the frame; one drain task at a time writes the
+     * queue to the real session, so sends to it are never concurrent.
+     */
+    private class BoundedSession extends WebSocketSessionDecorator {
+        private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        // Stats for the actuator endpoint, each written by one thread at a time
+        private volatile int maxDepth;
+        private volatile long sent;
+        private volatile long dropped;
+        private volatile long coalesced;
+
+        BoundedSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            Frame frame = toFrame(message);
+            boolean startDrain = false;
+            boolean disconnect = false;
+            synchronized (queue) {
+                if (closed) {
+                    return;
+                }
+                if (frame.coalesceKey != null && replaceQueued(frame)) {
+                    return; // the queued presence update now carries the newest list
+                }
+                if (queue.size() >= queueCapacity) {
+                    if (policy == Policy.DISCONNECT) {
+                        disconnect = true;
+                    } else {
+                        dropOldest(); // only control frames queued: this one goes in over capacity
+                        disconnect = maxDrops > 0 && dropped >= maxDrops;
+                    }
+                }
+                if (disconnect) {
+                    closed = true;
+                    queue.clear();
+                } else {
+                    queue.addLast(frame);
+                    maxDepth = Math.max(maxDepth, queue.size());
+                    if (!draining) {
+                        draining = true;
+                        startDrain = true;
+                    }
+                }
+            }
+            if (disconnect) {
+                disconnectSlowConsumer();
+            } else if (startDrain) {
+                drainers.execute(this::drain);
+            }
+        }
+
+        private boolean replaceQueued(Frame frame) {
+            for (Frame queued : queue) {
+                if (frame.coalesceKey.equals(queued.coalesceKey)) {
+                    queued.message = frame.message;
+                    coalesced++;
+                    OutboundBackpressureService.this.coalesced.increment();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean dropOldest() {
+            Iterator<Frame> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().droppable) {
+                    iterator.remove();
+                    dropped++;
+                    OutboundBackpressureService.this.dropped.increment();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void drain() {
+            while (true) {
+                WebSocketMessage<?> next;
+                synchronized (queue) {
+                    Frame frame = queue.pollFirst();
+                    if (frame == null || closed) {
+                        draining = false;
+                        return;
+                    }
+                    next = frame.message;
+                }
+                try {
+                    getDelegate().sendMessage(next);
+                    sent++;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("WebSocket send to session " + getId() + " failed: " + e.getMessage());
+                    discard();
+                    return;
+                }
+            }
+        }
+
+        private void disconnectSlowConsumer() {
+            disconnects.increment();
+            System.err.println("Disconnecting slow WebSocket session " + getId()
+                    + " (dropped " + dropped + " frames, policy " + policy + ")");
+            drainers.execute(() -> {
+                try {
+                    getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (IOException e) {
+                    System.err.println("Failed to close slow WebSocket session " + getId() + ": " + e.getMessage());
+                }
+            });
+        }
+
+        void discard() {
+            synchronized (queue) {
+                closed = true;
+                queue.clear();
+                draining = false;
+            }
+        }
+
+        int depth() {
+            synchronized (queue) {
+                return queue.size();
+            }
+        }
+    }
+
+    // Reads the STOMP command and destination from the start of an outgoing frame
+    private Frame toFrame(WebSocketMessage<?> message) {
+        String head;
+        if (message instanceof TextMessage text) {
+            String payload = text.getPayload();
+            head = payload.substring(0, Math.min(payload.length(), 512));
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer buffer = binary.getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(buffer.remaining(), 512)];
+            buffer.get(bytes);
+            head = new String(bytes, StandardCharsets.UTF_8);
+        } else {
+            return new Frame(message, false, null);
+        }
+
+        int headersEnd = head.indexOf("\n\n");
+        if (!head.startsWith("MESSAGE\n")) {
+            return new Frame(message, false, null); // control frame or heartbeat
+        }
+        String coalesceKey = null;
+        if (policy == Policy.COALESCE) {
+            String destination = header(head, headersEnd, "destination");
+            if (destination != null && destination.endsWith("/activeUsers")) {
+                // Per subscription, so a session subscribed twice still gets the update on both
+                coalesceKey = destination + "|" + header(head, headersEnd, "subscription");
+            }
+        }
+        return new Frame(message, true, coalesceKey);
+    }
+
+    private static String header(String head, int headersEnd, String name) {
+        String prefix = "\n" + name + ":";
+        int start = head.indexOf(prefix);
+        if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+            return null;
+        }
+        int end = head.indexOf('\n', start + 1);
+        return head.substring(start + prefix.length(), end < 0 ? head.length() : end).trim();
+    }
+
+    @PreDestroy
+    public void stop() {
+        drainers.shutdownNow();
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last N messages of recently active rooms in memory so that room joins and
+ * "latest messages" requests don't go to MongoDB.
+ * Each room has a ring indexed by Message.Seq, filled on send and on the first read.
+ * The number of rooms held is bounded; the least recently used rooms are evicted.
+ */
+@Service
+public class RecentMessageCache {
+
+    @Autowired
+    private MessageStoreService messageStoreService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.messages.recent-cache.messages-per-room:50}")
+    private int messagesPerRoom;
+
+    @Value("${app.messages.recent-cache.max-rooms:1000}")
+    private int maxRooms;
+
+    private static final long FLOOR_RECHECK_MS = 60_000;
+
+    // Messages read per step when getMessagesPage skips the pages before the requested one
+    private static final int PAGE_SKIP_CHUNK = 500;
+
+    // roomId -> ring of the room's newest messages
+    private Cache<String, RoomRing> rooms;
+
+    private Counter hits;
+    private Counter misses;
+
+    /**
+     * Fixed-size ring where message n of a room lives in slot n % size.
+     * A slot is only ever replaced by a newer message, so concurrent sends can add in any order.
+     */
+    private static class RoomRing {
+        private final AtomicReferenceArray<Message> slots;
+        // Lowest seq still stored for the room, 0 until looked up. Retention sweeps evict the
+        // ring; buckets removed by MongoDB's TTL monitor are picked up when it is re-read
+        private volatile long floorSeq;
+        private volatile long floorCheckedAt;
+
+        RoomRing(int size) {
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        void put(Message message) {
+            int slot = (int) (message.getSeq() % slots.length());
+            Message current;
+            do {
+                current = slots.get(slot);
+                if (current != null && current.getSeq() >= message.getSeq()) {
+                    return;
+                }
+            } while (!slots.compareAndSet(slot, current, message));
+        }
+
+        /**
+         * @return Messages fromSeq..toSeq in order, or null if any of them is not in the ring.
+         */
+        List<Message> window(long fromSeq, long toSeq) {
+            if (toSeq - fromSeq + 1 > slots.length()) {
+                return null;
+            }
+            List<Message> messages = new ArrayList<>((int) Math.max(0, toSeq - fromSeq + 1));
+            for (long seq = fromSeq; seq <= toSeq; seq++) {
+                Message message = slots.get((int) (seq % slots.length()));
+                if (message == null || message.getSeq() != seq) {
+                    return null;
+                }
+                messages.add(message);
+            }
+            return messages;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .build();
+        hits = Counter.builder("hashchat.messages.recent.cache").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("hashchat.messages.recent.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Records a message that was just placed (it must already have its Seq).
+     */
+    public void add(String roomId, Message message) {
+        rooms.get(roomId, k -> new RoomRing(messagesPerRoom)).put(message);
+    }
+
+    /**
+     * Same contract as MessageStoreService.getMessagesBefore, served from memory when the
+     * whole requested window is in the room's ring.
+     */
+    public MessageHistoryPage getMessagesBefore(String roomId, Long beforeSeq, int limit) {
+        long lastSeq = messageStoreService.getLastSeq(roomId);
+        long toSeq = Math.min(lastSeq, beforeSeq != null ? beforeSeq - 1 : lastSeq);
+        long fromSeq = Math.max(1, toSeq - limit + 1);
+        if (toSeq < 1) {
+            return new MessageHistoryPage(new ArrayList<>(), null, false);
+        }
+
+        MessageHistoryPage page = fromRing(roomId, fromSeq, toSeq);
+        if (page != null) {
+            hits.increment();
+            return page;
+        }
+
+        misses.increment();
+        MessageHistoryPage stored = messageStoreService.getMessagesBefore(roomId, beforeSeq, limit);
+        RoomRing ring = rooms.get(roomId, k -> new RoomRing(messagesPerRoom));
+        for (Message message : stored.getMessages()) {
+            ring.put(message);
+        }
+        // Messages still in the write-behind buffer are only in the ring, so prefer it if it now fits
+        page = fromRing(roomId, fromSeq, toSeq);
+        return page != null ? page : stored;
+    }
+
+    /**
+     * Messages with a sequence number above {@code afterSeq}, oldest first, for clients that
+     * reconnect and want what they missed. At most {@code maxMessages} (the newest ones) are
+     * returned; when more were missed hasMore is set and nextCursor can be used with the
+     * history endpoint to fill the gap.
+     */
+    public MessageHistoryPage getMessagesAfter(String roomId, long afterSeq, int maxMessages) {
+        long missed = messageStoreService.getLastSeq(roomId) - afterSeq;
+        if (missed <= 0) {
+            return new MessageHistoryPage(new ArrayList<>(), null, false);
+        }
+
+        int limit = (int) Math.min(missed, maxMessages);
+        List<Message> messages = new ArrayList<>();
+        for (Message message : getMessagesBefore(roomId, null, limit).getMessages()) {
+            if (message.getSeq() > afterSeq) {
+                messages.add(message);
+            }
+        }
+        boolean hasMore = missed > maxMessages && !messages.isEmpty() && messages.getFirst().getSeq() > floorSeq(roomId);
+        return new MessageHistoryPage(messages, hasMore ? messages.getFirst().getSeq() : null, hasMore);
+    }
+
+    /**
+     * Page/size view used by the older messages endpoint: page 0 is the newest {@code size} messages.
+     * Seqs can have gaps (block leases, deleted messages), so the page can't be computed from
+     * the last seq; the newer pages are skipped by following the history cursors. The first
+     * step covers the ring, so shallow pages are still served from memory, later steps read
+     * up to PAGE_SKIP_CHUNK messages from the store.
+     */
+    public List<Message> getMessagesPage(String roomId, int page, int size) {
+        if (size <= 0 || page < 0) {
+            return new ArrayList<>();
+        }
+        Long before = null;
+        long skip = (long) page * size;
+        while (skip > 0) {
+            int step = before == null ? messagesPerRoom : PAGE_SKIP_CHUNK;
+            MessageHistoryPage skipped = getMessagesBefore(roomId, before, (int) Math.min(skip, step));
+            if (!skipped.isHasMore() || skipped.getMessages().isEmpty()) {
+                return new ArrayList<>(); // the room has no more than page * size messages
+            }
+            skip -= skipped.getMessages().size();
+            before = skipped.getNextCursor();
+        }
+        return getMessagesBefore(roomId, before, size).getMessages();
+    }
+
+    /**
+     * Drops a room's ring, e.g. after old messages were deleted. It is refilled on the next read.
+     */
+    public void evictRoom(String roomId) {
+        rooms.invalidate(roomId);
+    }
+
+    /**
+     * Applies the same anonymization to cached messages as MessageAnonymizationService does to stored ones.
+     */
+    public void anonymizeSender(String senderId) {
+        for (RoomRing ring : rooms.asMap().values()) {
+            for (int i = 0; i < ring.slots.length(); i++) {
+                Message message = ring.slots.get(i);
+                if (message != null && senderId.equals(message.getSenderId())) {
+                    message.setSender(MessageAnonymizationService.DELETED_USER_NAME);
+                    message.setImageUrl(null);
+                }
+            }
+        }
+    }
+
+    private MessageHistoryPage fromRing(String roomId, long fromSeq, long toSeq) {
+        RoomRing ring = rooms.getIfPresent(roomId);
+        if (ring == null) {
+            return null;
+        }
+        List<Message> messages = ring.window(fromSeq, toSeq);
+        if (messages == null) {
+            return null;
+        }
+        // Retention and archiving can leave nothing below the window even though seqs start at 1
+        boolean hasMore = fromSeq > floorSeq(roomId);
+        return new MessageHistoryPage(messages, hasMore ? fromSeq : null, hasMore);
+    }
+
+    // Treats an empty store as "nothing older"; that is not cached, the room's first writes may still be in flight
+    private long floorSeq(String roomId) {
+        RoomRing ring = rooms.get(roomId, k -> new RoomRing(messagesPerRoom));
+        long floor = ring.floorSeq;
+        long now = System.currentTimeMillis();
+        if (floor == 0 || now - ring.floorCheckedAt > FLOOR_RECHECK_MS) {
+            floor = messageStoreService.getMinSeq(roomId);
+            ring.floorSeq = floor;
+            ring.floorCheckedAt = now;
+        }
+        return floor == 0 ? Long.MAX_VALUE : floor;
+    }
+}
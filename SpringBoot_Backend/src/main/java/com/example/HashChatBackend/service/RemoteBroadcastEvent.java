@@ -0,0 +1,19 @@
+package com.example.HashChatBackend.service;
+
+/**
+ * Published by a clustered ClusterFanout for every broadcast that came from another node,
+ * after it was handed to the local broker. Lets per-node state (recent messages, search
+ * index, global chat history) see messages placed elsewhere, see ClusterCacheSync.
+ */
+public class RemoteBroadcastEvent {
+    private final String destination;
+    private final byte[] payload; // the JSON the publishing node serialized
+
+    public RemoteBroadcastEvent(String destination, byte[] payload) {
+        this.destination = destination;
+        this.payload = payload;
+    }
+
+    public String getDestination() { return destination; }
+    public byte[] getPayload() { return payload; }
+}
@@ -2,20 +2,132 @@ package com.example.HashChatBackend.service;
 
 import com.example.HashChatBackend.model.Room;
 import com.example.HashChatBackend.repository.RoomRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
 @Service
 public class RoomService {
 
     @Autowired
     private RoomRepository roomRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.rooms.cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${app.rooms.cache.ttl-seconds:600}")
+    private long cacheTtlSeconds;
+
+    @Value("${app.rooms.cache.negative-ttl-seconds:30}")
+    private long negativeCacheTtlSeconds;
+
+    // roomId -> room metadata (loaded without the messages array)
+    private Cache<String, Room> rooms;
+
+    // roomIds that were looked up and don't exist, kept shorter so a room created on
+    // another instance becomes visible quickly
+    private Cache<String, Boolean> unknownRooms;
+
+    @PostConstruct
+    public void initCaches() {
+        rooms = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .recordStats()
+                .build();
+        unknownRooms = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(negativeCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, rooms, "rooms");
+        CaffeineCacheMetrics.monitor(meterRegistry, unknownRooms, "unknownRooms");
+    }
+
+    /**
+     * Looks up room metadata (id and roomId, never the messages) through the cache.
+     *
+     * @return The room, or null if it doesn't exist.
+     */
     public Room getRoomByRoomId(String roomId){
-        return roomRepository.findByRoomId(roomId);
+        Room cached = rooms.getIfPresent(roomId);
+        if (cached != null) {
+            return cached;
+        }
+        if (unknownRooms.getIfPresent(roomId) != null) {
+            return null;
+        }
+
+        Room room = roomRepository.findMetadataByRoomId(roomId);
+        if (room != null) {
+            rooms.put(roomId, room);
+        } else {
+            unknownRooms.put(roomId, Boolean.TRUE);
+        }
+        return room;
+    }
+
+    public boolean roomExists(String roomId) {
+        return getRoomByRoomId(roomId) != null;
+    }
+
+    /**
+     * Creates a new room and caches it, replacing any "unknown room" entry.
+     */
+    public Room createRoom(String roomId) {
+        Room room = new Room();
+        room.setRoomId(roomId);
+        Room savedRoom = roomRepository.save(room);
+
+        unknownRooms.invalidate(roomId);
+        rooms.put(roomId, savedRoom);
+        return savedRoom;
     }
 
     public Room saveRoom(Room room){
-        return roomRepository.save(room);
+        Room savedRoom = roomRepository.save(room);
+        rooms.invalidate(room.getRoomId());
+        unknownRooms.invalidate(room.getRoomId());
+        return savedRoom;
+    }
+
+    /**
+     * Sets a room's retention limits (null removes a limit) without rewriting the room document.
+     *
+     * @return The updated room metadata, or null if the room doesn't exist.
+     */
+    public Room updateRetention(String roomId, Integer maxAgeDays, Long maxMessages) {
+        Update update = new Update();
+        if (maxAgeDays != null) {
+            update.set("retentionMaxAgeDays", maxAgeDays);
+        } else {
+            update.unset("retentionMaxAgeDays");
+        }
+        if (maxMessages != null) {
+            update.set("retentionMaxMessages", maxMessages);
+        } else {
+            update.unset("retentionMaxMessages");
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("roomId").is(roomId)), update, Room.class);
+
+        rooms.invalidate(roomId);
+        return getRoomByRoomId(roomId);
     }
 }
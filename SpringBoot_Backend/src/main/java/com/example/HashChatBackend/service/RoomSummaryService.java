@@ -0,0 +1,177 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageArchiveSegment;
+import com.example.HashChatBackend.model.MessageBucket;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import com.example.HashChatBackend.model.Room;
+import com.example.HashChatBackend.model.RoomSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains RoomSummary documents.
+ * The preview and last activity only ever move forward ($max, preview only replaced by a newer
+ * message), so batches may be applied in any order. messageCount is increased by the messages
+ * of each written batch; a batch recorded twice (a journal replay after a crash right after
+ * recording it) or a bucket removed by MongoDB's TTL monitor makes it drift, which recount()
+ * corrects, called by the retention sweeps.
+ */
+@Service
+public class RoomSummaryService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Value("${app.rooms.summary.preview-length:120}")
+    private int previewLength;
+
+    /**
+     * Folds a batch of messages that has just been written into the summaries of their rooms.
+     * Failures are logged only: a summary is rebuilt from the history the next time it is missing.
+     */
+    public void recordBatch(List<MessageStoreService.PendingMessage> batch) {
+        // roomId -> newest message of the room in this batch, and how many it has
+        Map<String, Message> newest = new LinkedHashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (MessageStoreService.PendingMessage pending : batch) {
+            newest.merge(pending.getRoomId(), pending.getMessage(),
+                    (a, b) -> a.getSeq() >= b.getSeq() ? a : b);
+            counts.merge(pending.getRoomId(), 1, Integer::sum);
+        }
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, RoomSummary.class);
+            int operations = 0;
+            for (Map.Entry<String, Message> entry : newest.entrySet()) {
+                Room room = roomService.getRoomByRoomId(entry.getKey()); // cached
+                if (room != null) {
+                    addUpdates(bulk, room.getId(), room.getRoomId(), entry.getValue(), counts.get(entry.getKey()));
+                    operations++;
+                }
+            }
+            if (operations > 0) {
+                bulk.execute();
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to update room summaries: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Summaries of the given rooms (by Room.id), in no particular order.
+     * Rooms that don't have a summary yet (created before summaries existed) get one built
+     * from their newest message.
+     */
+    public List<RoomSummary> getSummaries(List<String> roomMongoIds) {
+        List<RoomSummary> summaries = new ArrayList<>(mongoTemplate.find(
+                new Query(Criteria.where("id").in(roomMongoIds)), RoomSummary.class));
+        if (summaries.size() == roomMongoIds.size()) {
+            return summaries;
+        }
+
+        Map<String, RoomSummary> found = new HashMap<>();
+        for (RoomSummary summary : summaries) {
+            found.put(summary.getId(), summary);
+        }
+        List<String> missing = new ArrayList<>();
+        for (String id : roomMongoIds) {
+            if (!found.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+
+        Query roomQuery = new Query(Criteria.where("id").in(missing));
+        roomQuery.fields().include("roomId"); // never the legacy messages array
+        for (Room room : mongoTemplate.find(roomQuery, Room.class)) {
+            summaries.add(buildSummary(room));
+        }
+        return summaries;
+    }
+
+    private RoomSummary buildSummary(Room room) {
+        MessageHistoryPage latest = recentMessageCache.getMessagesBefore(room.getRoomId(), null, 1);
+        Message last = latest.getMessages().isEmpty() ? null : latest.getMessages().getLast();
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, RoomSummary.class);
+        addUpdates(bulk, room.getId(), room.getRoomId(), last, 0);
+        bulk.execute();
+        recount(room.getRoomId());
+        return mongoTemplate.findById(room.getId(), RoomSummary.class);
+    }
+
+    /**
+     * Sets a room's messageCount to the number of messages in its buckets and archived segments.
+     * Writes that land between the count and the update are missed until the next recount.
+     */
+    public void recount(String roomId) {
+        long count = 0;
+        for (Class<?> collection : List.of(MessageBucket.class, MessageArchiveSegment.class)) {
+            Aggregation total = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("roomId").is(roomId)),
+                    Aggregation.group().sum("count").as("total"));
+            Document result = mongoTemplate.aggregate(total, collection, Document.class).getUniqueMappedResult();
+            if (result != null) {
+                count += ((Number) result.get("total")).longValue();
+            }
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("roomId").is(roomId)),
+                new Update().set("messageCount", count), RoomSummary.class);
+    }
+
+    private void addUpdates(BulkOperations bulk, String roomMongoId, String roomId, Message newest, int written) {
+        Update counters = new Update().setOnInsert("roomId", roomId);
+        if (newest == null) {
+            bulk.upsert(new Query(Criteria.where("id").is(roomMongoId)), counters);
+            return;
+        }
+        counters.inc("messageCount", written)
+                .max("lastActivityAt", newest.getTimeStamp());
+        bulk.upsert(new Query(Criteria.where("id").is(roomMongoId)), counters);
+
+        // Only replace the preview with a newer message
+        Query olderPreview = new Query(Criteria.where("id").is(roomMongoId)
+                .and("lastMessageSeq").not().gte(newest.getSeq()));
+        Update preview = new Update()
+                .set("lastMessagePreview", preview(newest))
+                .set("lastSender", newest.getSender())
+                .set("lastSenderId", newest.getSenderId())
+                .set("lastMessageSeq", newest.getSeq());
+        bulk.updateOne(olderPreview, preview);
+    }
+
+    /**
+     * Shows "Deleted User" instead of a deleted account's name in previews.
+     */
+    public void anonymizeSender(String email) {
+        mongoTemplate.updateMulti(new Query(Criteria.where("lastSenderId").is(email)),
+                new Update().set("lastSender", MessageAnonymizationService.DELETED_USER_NAME), RoomSummary.class);
+    }
+
+    private String preview(Message message) {
+        String content = message.getContent();
+        if (content == null) {
+            return "";
+        }
+        return content.length() > previewLength ? content.substring(0, previewLength) + "…" : content;
+    }
+}
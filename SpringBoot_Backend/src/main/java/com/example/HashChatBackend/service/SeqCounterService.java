@@ -0,0 +1,83 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.SeqCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hands out sequence numbers from SeqCounter documents in MongoDB.
+ * Seqs are leased in blocks: one findAndModify with $inc reserves the next n seqs for the
+ * caller, who can then use them without asking again. Unused seqs can be given back as long
+ * as nobody has leased after them; otherwise they are simply never used (a gap).
+ */
+@Service
+public class SeqCounterService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public static String roomKey(String roomId) {
+        return "room:" + roomId;
+    }
+
+    /**
+     * @return The counter, or null if it has not been created yet.
+     */
+    public SeqCounter get(String key) {
+        return mongoTemplate.findById(key, SeqCounter.class);
+    }
+
+    /**
+     * Creates the counter with the given starting point unless it exists already, in which
+     * case the existing one wins (another node created it first).
+     */
+    public SeqCounter create(String key, long lastSeq, long baseBucket) {
+        Update update = new Update()
+                .setOnInsert("lastSeq", lastSeq)
+                .setOnInsert("baseSeq", lastSeq + 1)
+                .setOnInsert("baseBucket", baseBucket);
+        try {
+            mongoTemplate.upsert(new Query(Criteria.where("id").is(key)), update, SeqCounter.class);
+        } catch (DuplicateKeyException e) {
+            // Two upserts raced on the same _id; the other one inserted it
+        }
+        return get(key);
+    }
+
+    /**
+     * Reserves the next {@code count} seqs of the counter, creating it at 0 if needed.
+     *
+     * @return The counter after the lease: the leased seqs are lastSeq - count + 1 .. lastSeq.
+     */
+    public SeqCounter lease(String key, int count) {
+        Query query = new Query(Criteria.where("id").is(key));
+        Update update = new Update().inc("lastSeq", count);
+        FindAndModifyOptions options = FindAndModifyOptions.options().returnNew(true).upsert(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, SeqCounter.class);
+        } catch (DuplicateKeyException e) {
+            // Created by another node at the same moment, it exists now
+            return mongoTemplate.findAndModify(query, update, options, SeqCounter.class);
+        }
+    }
+
+    /**
+     * Returns the unused end of a lease (lastUsed + 1 .. leaseEnd) to the counter, if no
+     * later lease has been taken.
+     *
+     * @return true if the seqs were given back.
+     */
+    public boolean giveBack(String key, long leaseEnd, long lastUsed) {
+        if (lastUsed >= leaseEnd) {
+            return true;
+        }
+        return mongoTemplate.updateFirst(new Query(Criteria.where("id").is(key).and("lastSeq").is(leaseEnd)),
+                new Update().set("lastSeq", lastUsed), SeqCounter.class).getModifiedCount() > 0;
+    }
+}
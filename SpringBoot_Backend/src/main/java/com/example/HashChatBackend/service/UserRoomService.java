@@ -1,6 +1,8 @@
 package com.example.HashChatBackend.service;
 
 import com.example.HashChatBackend.model.Room;
+import com.example.HashChatBackend.model.RoomHistoryPage;
+import com.example.HashChatBackend.model.RoomSummary;
 import com.example.HashChatBackend.model.User;
 import com.example.HashChatBackend.model.UserRoomMembership;
 import com.example.HashChatBackend.model.UserRoomMembershipId;
@@ -9,11 +11,11 @@ import com.example.HashChatBackend.repository.UserRepo;
 import com.example.HashChatBackend.repository.UserRoomMembershipRepository;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -24,15 +26,18 @@ public class UserRoomService {
     @Autowired
     private UserRoomMembershipRepository userRoomMembershipRepository;
 
-    @Autowired
-    private MongoTemplate mongoTemplate; // Used to interact with MongoDB
-
     @Autowired
     private UserRepo userRepo;
 
     @Autowired
     private RoomRepository roomRepository;
 
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
     /**
      * Handles a user entering/viewing a room.
      * Inserts a new membership or updates the last_visited_at for an existing one.
@@ -69,43 +74,74 @@ public class UserRoomService {
     }
 
     /**
-     * Retrieves the most recently visited rooms for a given user.
-     * This involves querying PostgreSQL for room IDs, then MongoDB for room details.
+     * Retrieves one page of the rooms a user has visited, most recently visited first.
+     * PostgreSQL returns only the rows of the page (keyset on last_visited_at, room_mongo_id),
+     * so the cost does not grow with the number of rooms the user has ever joined.
      *
      * @param userId The ID of the user (from PostgreSQL).
      * @param limit The maximum number of rooms to retrieve.
-     * @return A list of Room objects from MongoDB, ordered by last visited.
+     * @param cursor nextCursor of the previous page, or null for the first page.
+     * @return A page of RoomSummary objects (same id/roomId as the Room), ordered by last visited.
      */
-    public List<Room> getPreviouslyVisitedRooms(Long userId, int limit) {
-        // 1. Query PostgreSQL for room_mongo_ids and order them
-        List<UserRoomMembership> memberships = userRoomMembershipRepository.findById_UserIdOrderByLastVisitedAtDesc(userId);
+    public RoomHistoryPage getPreviouslyVisitedRooms(Long userId, int limit, String cursor) {
+        // 1. Query PostgreSQL for one page of room_mongo_ids (+1 row to know if there is another page)
+        Pageable pageable = PageRequest.of(0, limit + 1);
+        List<UserRoomMembership> memberships;
+        if (cursor == null || cursor.isEmpty()) {
+            memberships = userRoomMembershipRepository.findRecentByUserId(userId, pageable);
+        } else {
+            String[] position = decodeCursor(cursor);
+            memberships = userRoomMembershipRepository.findRecentByUserIdBefore(
+                    userId, LocalDateTime.parse(position[0]), position[1], pageable);
+        }
+
+        boolean hasMore = memberships.size() > limit;
+        if (hasMore) {
+            memberships = memberships.subList(0, limit);
+        }
+        if (memberships.isEmpty()) {
+            return new RoomHistoryPage(new ArrayList<>(), null, false); // No rooms found for this user
+        }
+        String nextCursor = hasMore ? encodeCursor(memberships.getLast()) : null;
 
-        // Limit the results from PostgreSQL before querying MongoDB
         List<String> roomMongoIds = memberships.stream()
                 .map(m -> m.getId().getRoomMongoId())
-                .limit(limit) // Apply limit here
                 .collect(Collectors.toList());
 
-        if (roomMongoIds.isEmpty()) {
-            return new ArrayList<>(); // No rooms found for this user
-        }
-
-        // 2. Query MongoDB for the actual Room documents using their _ids
-        Query query = new Query(Criteria.where("id").in(roomMongoIds));
-        List<Room> rooms = mongoTemplate.find(query, Room.class);
+        // 2. Fetch the small summary documents instead of the Room documents, which used to
+        // carry the room's whole message history
+        List<RoomSummary> summaries = roomSummaryService.getSummaries(roomMongoIds);
 
-        // 3. (Optional) Re-sort the rooms to match the PostgreSQL ordering
+        // 3. Re-sort the summaries to match the PostgreSQL ordering
         // MongoDB's $in query doesn't guarantee order.
-        // You might want to create a Map for faster lookup if 'limit' is large,
-        // or just iterate through the ordered 'memberships' list and find the room.
-        Map<String, Room> roomMap = rooms.stream()
-                .collect(Collectors.toMap(Room::getId, room -> room));
-
-        return memberships.stream()
-                .filter(m -> roomMap.containsKey(m.getId().getRoomMongoId()))
-                .map(m -> roomMap.get(m.getId().getRoomMongoId()))
-                .limit(limit)
+        Map<String, RoomSummary> summaryMap = summaries.stream()
+                .collect(Collectors.toMap(RoomSummary::getId, summary -> summary));
+
+        List<RoomSummary> rooms = roomMongoIds.stream()
+                .filter(summaryMap::containsKey)
+                .map(summaryMap::get)
                 .collect(Collectors.toList());
+        return new RoomHistoryPage(rooms, nextCursor, hasMore);
+    }
+
+    // Cursor = base64url("<lastVisitedAt>|<roomMongoId>") of the last membership of a page
+    private String encodeCursor(UserRoomMembership last) {
+        String position = last.getLastVisitedAt() + "|" + last.getId().getRoomMongoId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split("\\|", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            LocalDateTime.parse(parts[0]); // validate
+            return parts;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid room history cursor.");
+        }
     }
 
     /**
@@ -117,7 +153,7 @@ public class UserRoomService {
      */
     public List<Map<String, Object>> getDistinctUserProfilesInRoom(String roomMongoId) {
         //Convert roomMongoId from rom1 to actual mongoRoomId
-        Room room = roomRepository.findByRoomId(roomMongoId);
+        Room room = roomService.getRoomByRoomId(roomMongoId);
         String actualMongoRoomId=room.getId();
         System.out.println("actualMongoRoomId"+actualMongoRoomId);
 
@@ -5,7 +5,6 @@ import com.example.HashChatBackend.model.UserProfileDTO;
 import com.example.HashChatBackend.repository.UserRepo;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -25,7 +24,7 @@ public class UserService {
     private CloudinaryService cloudinaryService; // Inject CloudinaryService
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ClusterFanout clusterFanout;
 
     // private final String uploadDir = "uploads/profile-pics/"; // Remove this, no longer needed
 
@@ -67,7 +66,7 @@ public class UserService {
         user.setProfileCompleted(true);
         User savedUser=userRepository.save(user);
 
-        messagingTemplate.convertAndSend("/topic/profileUpdates", new ProfileUpdateNotification(savedUser.getEmail()));
+        clusterFanout.publish("/topic/profileUpdates", new ProfileUpdateNotification(savedUser.getEmail()));
         return new UserProfileDTO(
                 savedUser.getId(),
                 savedUser.getEmail(),
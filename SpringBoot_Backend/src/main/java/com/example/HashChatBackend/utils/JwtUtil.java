@@ -38,6 +38,18 @@ public class JwtUtil {
                 .compact();
     }
 
+    /**
+     * Verifies the signature and expiry and returns the claims, in one parse.
+     * Throws JwtException (or IllegalArgumentException) if the token is not valid.
+     */
+    public Claims parseToken(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(getSigningKey())
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
     public String getEmailFromToken(String token) {
         Claims claims = Jwts.parserBuilder()
                 .setSigningKey(getSigningKey())
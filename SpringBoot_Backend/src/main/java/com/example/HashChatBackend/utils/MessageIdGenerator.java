@@ -0,0 +1,48 @@
+package com.example.HashChatBackend.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates compact, unique, roughly time-ordered message IDs without any database call.
+ * Layout of the 64 bit value: 41 bits milliseconds since 2024-01-01, 10 bits node id,
+ * 12 bits counter within the millisecond. It is rendered in base 36 (about 12 characters).
+ */
+@Component
+public class MessageIdGenerator {
+
+    private static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    private final long nodeId;
+
+    // (millis << COUNTER_BITS) | counter of the last generated id
+    private final AtomicLong lastState = new AtomicLong();
+
+    public MessageIdGenerator(@Value("${app.messages.node-id:-1}") long configuredNodeId) {
+        // Without a configured node id pick a random one, collisions need the same millisecond and counter as well
+        this.nodeId = configuredNodeId >= 0
+                ? configuredNodeId & ((1L << NODE_BITS) - 1)
+                : new SecureRandom().nextInt(1 << NODE_BITS);
+    }
+
+    public String nextId() {
+        long state;
+        long next;
+        do {
+            state = lastState.get();
+            long now = System.currentTimeMillis();
+            // A full counter simply carries into the next millisecond, so ids never repeat
+            next = Math.max(now << COUNTER_BITS, state + 1);
+        } while (!lastState.compareAndSet(state, next));
+
+        long millis = (next >>> COUNTER_BITS) - EPOCH;
+        long id = (millis << (NODE_BITS + COUNTER_BITS)) | (nodeId << COUNTER_BITS) | (next & COUNTER_MASK);
+        return Long.toString(id, 36);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.HashChatBackend.benchmarks;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.UserProfileDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON vs CBOR for the payloads we broadcast: a room message, an activeUsers update with
+ * 20 users and a /batch frame of 20 messages. Measures encoding each format from the object
+ * and the JSON -> CBOR re-encode PayloadEncodingInterceptor does once per broadcast.
+ * Payload sizes are printed at the start of each trial.
+ *
+ *   mvn -Pbenchmarks test -Djmh.args="PayloadEncodingBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadEncodingBenchmark {
+
+    @Param({"message", "activeUsers", "batch"})
+    public String payloadType;
+
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+    private Object payload;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Same settings Spring Boot gives the application's mapper
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        jsonMapper = builder.build();
+        cborMapper = builder.factory(new CBORFactory()).build();
+
+        payload = switch (payloadType) {
+            case "message" -> message(1);
+            case "activeUsers" -> activeUsers(20);
+            default -> batch(20);
+        };
+        json = jsonMapper.writeValueAsBytes(payload);
+        byte[] cbor = cborMapper.writeValueAsBytes(payload);
+        System.out.println(payloadType + ": json " + json.length + " B, cbor " + cbor.length + " B");
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws Exception {
+        return jsonMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] encodeCbor() throws Exception {
+        return cborMapper.writeValueAsBytes(payload);
+    }
+
+    // What a CBOR session costs per broadcast on top of the JSON encode
+    @Benchmark
+    public byte[] reencodeJsonToCbor() throws Exception {
+        return cborMapper.writeValueAsBytes(jsonMapper.readTree(json));
+    }
+
+    private static Message message(long seq) {
+        return new Message("msg-000000" + seq, seq, "alice@example.com", "Alice",
+                "Hey, are we still meeting at six? I can bring the slides.",
+                "https://res.cloudinary.com/demo/image/upload/v1700000000/profile_pics/alice.jpg",
+                LocalDateTime.of(2024, 5, 1, 18, 30, 15));
+    }
+
+    private static List<Message> batch(int size) {
+        List<Message> messages = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            messages.add(message(i));
+        }
+        return messages;
+    }
+
+    private static List<UserProfileDTO> activeUsers(int size) {
+        List<UserProfileDTO> users = new ArrayList<>(size);
+        for (long i = 1; i <= size; i++) {
+            users.add(new UserProfileDTO(i, "user" + i + "@example.com", "User " + i, "Likes chatting",
+                    "https://res.cloudinary.com/demo/image/upload/v1700000000/profile_pics/user" + i + ".jpg"));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.HashChatBackend.benchmarks;
+
+import com.example.HashChatBackend.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+import org.springframework.web.socket.sockjs.frame.SockJsFrame;
+import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-side cost of sending one room MESSAGE frame over the native endpoint (/chat-ws: the
+ * STOMP frame as a text message) vs SockJS (/chat: the STOMP frame JSON-escaped into an
+ * "a[...]" SockJS frame). Frame sizes are printed at the start of the trial.
+ * Network and browser costs (SockJS info request, heartbeat frames) are not covered.
+ *
+ *   mvn -Pbenchmarks test -Djmh.args="SockJsFramingBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SockJsFramingBenchmark {
+
+    private final StompEncoder encoder = new StompEncoder();
+    private final SockJsMessageCodec sockJsCodec = new Jackson2SockJsMessageCodec();
+    private org.springframework.messaging.Message<byte[]> frame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        Message message = new Message("msg-0000001", 42, "alice@example.com", "Alice",
+                "Hey, are we still meeting at six? I can bring the slides.",
+                "https://res.cloudinary.com/demo/image/upload/v1700000000/profile_pics/alice.jpg",
+                LocalDateTime.of(2024, 5, 1, 18, 30, 15));
+        byte[] payload = mapper.writeValueAsBytes(message);
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/room/study-group");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("a1b2c3d4-0");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setContentLength(payload.length);
+        frame = MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+
+        System.out.println("native " + nativeFrame().getBytes(StandardCharsets.UTF_8).length
+                + " B, sockjs " + sockJsFrame().getBytes(StandardCharsets.UTF_8).length + " B");
+    }
+
+    // What StompSubProtocolHandler sends on /chat-ws
+    @Benchmark
+    public String nativeFrame() {
+        return new String(encoder.encode(frame), StandardCharsets.UTF_8);
+    }
+
+    // The same frame, wrapped by the SockJS session on /chat
+    @Benchmark
+    public String sockJsFrame() {
+        return SockJsFrame.messageFrame(sockJsCodec, nativeFrame()).getContent();
+    }
+}
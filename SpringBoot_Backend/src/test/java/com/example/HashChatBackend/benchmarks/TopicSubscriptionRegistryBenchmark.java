@@ -0,0 +1,138 @@
+package com.example.HashChatBackend.benchmarks;
+
+import com.example.HashChatBackend.config.TopicSubscriptionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broker subscription lookups with our topic shapes: 10k sessions spread over 500 rooms,
+ * each subscribed to its room, the room's activeUsers and /topic/global.
+ * Compares TopicSubscriptionRegistry with Spring's DefaultSubscriptionRegistry, on its own
+ * (where the default registry's per-destination cache always hits) and with sessions joining
+ * and leaving rooms while broadcasts look up subscribers (the "churn" group).
+ *
+ *   mvn -Pbenchmarks test -Djmh.args="TopicSubscriptionRegistryBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicSubscriptionRegistryBenchmark {
+
+    @Param({"topic", "default"})
+    public String registry;
+
+    @Param({"10000"})
+    public int sessions;
+
+    @Param({"500"})
+    public int rooms;
+
+    private SubscriptionRegistry subscriptions;
+    private Message<?>[] roomMessages;
+    private Message<?> globalMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        subscriptions = "topic".equals(registry) ? new TopicSubscriptionRegistry() : new DefaultSubscriptionRegistry();
+        for (int session = 0; session < sessions; session++) {
+            String roomId = "room-" + (session % rooms);
+            String sessionId = "session-" + session;
+            subscriptions.registerSubscription(subscribe(sessionId, "sub-0", "/topic/room/" + roomId));
+            subscriptions.registerSubscription(subscribe(sessionId, "sub-1", "/topic/room/" + roomId + "/activeUsers"));
+            subscriptions.registerSubscription(subscribe(sessionId, "sub-2", "/topic/global"));
+        }
+        roomMessages = new Message<?>[rooms];
+        for (int room = 0; room < rooms; room++) {
+            roomMessages[room] = send("/topic/room/room-" + room);
+        }
+        globalMessage = send("/topic/global");
+    }
+
+    // One room broadcast: 20 subscribers
+    @Benchmark
+    public int findRoomSubscribers() {
+        MultiValueMap<String, String> found = subscriptions.findSubscriptions(
+                roomMessages[ThreadLocalRandom.current().nextInt(rooms)]);
+        int count = 0;
+        for (var ids : found.values()) {
+            count += ids.size();
+        }
+        return count;
+    }
+
+    // A global broadcast: every session
+    @Benchmark
+    public int findGlobalSubscribers() {
+        return subscriptions.findSubscriptions(globalMessage).size();
+    }
+
+    // A session joining a room and leaving again
+    @Benchmark
+    public void subscribeAndUnsubscribe() {
+        int room = ThreadLocalRandom.current().nextInt(rooms);
+        String sessionId = "churn-" + Thread.currentThread().threadId();
+        subscriptions.registerSubscription(subscribe(sessionId, "churn", "/topic/room/room-" + room));
+        subscriptions.unregisterSubscription(unsubscribe(sessionId, "churn"));
+    }
+
+    // Three threads broadcasting to rooms while one keeps joining and leaving rooms
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public int churnFindRoomSubscribers() {
+        return findRoomSubscribers();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void churnSubscribeAndUnsubscribe() {
+        subscribeAndUnsubscribe();
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> send(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
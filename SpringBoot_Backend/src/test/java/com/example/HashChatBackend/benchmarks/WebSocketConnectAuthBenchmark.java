@@ -0,0 +1,129 @@
+package com.example.HashChatBackend.benchmarks;
+
+import com.example.HashChatBackend.service.AuthIdentityCache;
+import com.example.HashChatBackend.service.CustomUserDetailsService;
+import com.example.HashChatBackend.utils.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * STOMP CONNECT authentication throughput: 32 threads connecting with the tokens of 500
+ * users, with a simulated 1 ms user lookup standing in for PostgreSQL.
+ *  - uncached: what the old inline interceptor did per connect (parse the token twice,
+ *    load the user)
+ *  - cached: AuthIdentityCache once every token and user has been seen
+ * User lookups made so far are printed before each iteration (there are none once cached).
+ *
+ *   mvn -Pbenchmarks test -Djmh.args="WebSocketConnectAuthBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(32)
+@Fork(1)
+public class WebSocketConnectAuthBenchmark {
+
+    @Param({"500"})
+    public int users;
+
+    @Param({"1"})
+    public long lookupMillis;
+
+    private JwtUtil jwtUtil;
+    private SlowUserDetailsService userDetailsService;
+    private AuthIdentityCache authIdentityCache;
+    private String[] tokens;
+
+    // The repository lookup, slowed down to a database round trip
+    static class SlowUserDetailsService extends CustomUserDetailsService {
+        private final AtomicLong lookups = new AtomicLong();
+        private final long lookupMillis;
+
+        SlowUserDetailsService(long lookupMillis) {
+            this.lookupMillis = lookupMillis;
+        }
+
+        @Override
+        public UserDetails loadUserByUsername(String email) {
+            lookups.incrementAndGet();
+            try {
+                Thread.sleep(lookupMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return User.withUsername(email).password("").authorities(List.of()).build();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", "benchmark-secret-benchmark-secret-benchmark-secret-benchmark-secret");
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpiration", TimeUnit.HOURS.toMillis(1));
+        userDetailsService = new SlowUserDetailsService(lookupMillis);
+
+        authIdentityCache = new AuthIdentityCache();
+        ReflectionTestUtils.setField(authIdentityCache, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(authIdentityCache, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(authIdentityCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(authIdentityCache, "maxTokens", 10_000L);
+        ReflectionTestUtils.setField(authIdentityCache, "maxUsers", 10_000L);
+        ReflectionTestUtils.setField(authIdentityCache, "tokenTtlSeconds", 900L);
+        ReflectionTestUtils.setField(authIdentityCache, "userTtlSeconds", 300L);
+        authIdentityCache.initCaches();
+
+        tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            tokens[i] = jwtUtil.generateToken("user" + i + "@example.com");
+            authIdentityCache.authenticate(tokens[i]); // warm
+        }
+        userDetailsService.lookups.set(0);
+    }
+
+    @Setup(Level.Iteration)
+    public void reportLookups() {
+        if (userDetailsService.lookups.get() > 0) {
+            System.out.println("user lookups so far: " + userDetailsService.lookups.get());
+        }
+    }
+
+    @Benchmark
+    public Authentication uncached() {
+        String token = tokens[ThreadLocalRandom.current().nextInt(users)];
+        String email = jwtUtil.getEmailFromToken(token);
+        UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+        if (!jwtUtil.validateToken(token, userDetails)) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
+
+    @Benchmark
+    public Authentication cached() {
+        return authIdentityCache.authenticate(tokens[ThreadLocalRandom.current().nextInt(users)]);
+    }
+}
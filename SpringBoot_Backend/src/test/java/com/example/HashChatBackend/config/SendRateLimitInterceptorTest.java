@@ -0,0 +1,158 @@
+package com.example.HashChatBackend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SendRateLimitInterceptorTest {
+
+    private static final String ROOM = "/app/sendMessage/room1";
+    private static final String GLOBAL = "/app/global/sendMessage";
+
+    private SendRateLimitInterceptor interceptor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // Refill rates low enough that no token comes back while a test runs
+        interceptor = interceptor(0.01, 3, 0.01, 1);
+    }
+
+    private SendRateLimitInterceptor interceptor(double roomPerSecond, int roomBurst, double globalPerSecond, int globalBurst) {
+        SendRateLimitInterceptor limiter = new SendRateLimitInterceptor();
+        ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "roomPerSecond", roomPerSecond);
+        ReflectionTestUtils.setField(limiter, "roomBurst", roomBurst);
+        ReflectionTestUtils.setField(limiter, "globalPerSecond", globalPerSecond);
+        ReflectionTestUtils.setField(limiter, "globalBurst", globalBurst);
+        ReflectionTestUtils.setField(limiter, "otherPerSecond", 0.01);
+        ReflectionTestUtils.setField(limiter, "otherBurst", 1);
+        limiter.init();
+        return limiter;
+    }
+
+    private static Message<byte[]> send(String destination, String user, String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(destination);
+        accessor.setSessionId(sessionId);
+        if (user != null) {
+            Principal principal = () -> user;
+            accessor.setUser(principal);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private void sendAllowed(String destination, String user, String sessionId) {
+        Message<byte[]> message = send(destination, user, sessionId);
+        assertSame(message, interceptor.preSend(message, null));
+    }
+
+    private void sendThrottled(String destination, String user, String sessionId) {
+        assertThrows(MessageDeliveryException.class, () -> interceptor.preSend(send(destination, user, sessionId), null));
+    }
+
+    @Test
+    void allowsTheBurstThenRejects() {
+        sendAllowed(ROOM, "alice", "s1");
+        sendAllowed(ROOM, "alice", "s1");
+        sendAllowed(ROOM, "alice", "s1");
+        sendThrottled(ROOM, "alice", "s1");
+        assertEquals(1.0, meterRegistry.get("hashchat.websocket.throttled").tag("destination", "room").counter().count());
+    }
+
+    @Test
+    void userBucketIsSharedBetweenTabs() {
+        sendAllowed(ROOM, "alice", "s1");
+        sendAllowed(ROOM, "alice", "s2");
+        sendAllowed(ROOM, "alice", "s3");
+        sendThrottled(ROOM, "alice", "s4");
+    }
+
+    @Test
+    void bucketsAreSeparatePerUserAndDestinationKind() {
+        sendAllowed(GLOBAL, "alice", "s1");
+        sendThrottled(GLOBAL, "alice", "s1");
+
+        sendAllowed(GLOBAL, "bob", "s2");
+        sendAllowed(ROOM, "alice", "s1");
+    }
+
+    @Test
+    void guestsAreLimitedPerSession() {
+        sendAllowed(GLOBAL, null, "guest1");
+        sendThrottled(GLOBAL, null, "guest1");
+        sendAllowed(GLOBAL, null, "guest2");
+    }
+
+    @Test
+    void tokensComeBackAtTheConfiguredRate() throws InterruptedException {
+        interceptor = interceptor(100, 1, 0.01, 1); // one token every 10 ms
+        sendAllowed(ROOM, "alice", "s1");
+        sendThrottled(ROOM, "alice", "s1");
+        Thread.sleep(30);
+        sendAllowed(ROOM, "alice", "s1");
+    }
+
+    @Test
+    void ignoresFramesOtherThanSendAndWhenDisabled() {
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setDestination("/topic/global");
+        subscribe.setSessionId("s1");
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders());
+        for (int i = 0; i < 10; i++) {
+            assertSame(message, interceptor.preSend(message, null));
+        }
+
+        ReflectionTestUtils.setField(interceptor, "enabled", false);
+        for (int i = 0; i < 10; i++) {
+            sendAllowed(GLOBAL, "alice", "s1");
+        }
+    }
+
+    @Test
+    void disconnectDropsGuestBuckets() {
+        sendAllowed(GLOBAL, null, "guest1");
+        sendThrottled(GLOBAL, null, "guest1");
+        StompHeaderAccessor disconnect = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        disconnect.setSessionId("guest1");
+        interceptor.handleSessionDisconnect(new SessionDisconnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), "guest1", CloseStatus.NORMAL));
+        sendAllowed(GLOBAL, null, "guest1"); // a fresh bucket
+    }
+
+    @Test
+    void sweepDropsRefilledBuckets() throws InterruptedException {
+        interceptor = interceptor(1000, 1, 0.01, 1);
+        sendAllowed(ROOM, "alice", "s1");
+        sendAllowed(GLOBAL, "bob", "s2");
+        Thread.sleep(10); // alice's bucket is full again, bob's is not
+        interceptor.sweep();
+        assertEquals(0, bucketCount(SendRateLimitInterceptor.Kind.ROOM));
+        assertEquals(1, bucketCount(SendRateLimitInterceptor.Kind.GLOBAL));
+    }
+
+    @SuppressWarnings("unchecked")
+    private int bucketCount(SendRateLimitInterceptor.Kind kind) {
+        Map<SendRateLimitInterceptor.Kind, Map<String, ?>> buckets =
+                (Map<SendRateLimitInterceptor.Kind, Map<String, ?>>) ReflectionTestUtils.getField(interceptor, "buckets");
+        return buckets.get(kind).size();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.HashChatBackend.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicSubscriptionRegistryTest {
+
+    private static final String ROOM = "/topic/room/room1";
+
+    private TopicSubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new TopicSubscriptionRegistry();
+    }
+
+    @Test
+    void lookupsSeeSubscribesAndUnsubscribesAfterTheDestinationWasCached() {
+        registry.registerSubscription(subscribe("s1", "sub-0", ROOM, null));
+        assertEquals(Map.of("s1", List.of("sub-0")), registry.findSubscriptions(send(ROOM, null)));
+
+        registry.registerSubscription(subscribe("s2", "sub-0", ROOM, null));
+        registry.registerSubscription(subscribe("s1", "sub-1", ROOM, null));
+        assertEquals(Map.of("s1", List.of("sub-0", "sub-1"), "s2", List.of("sub-0")),
+                registry.findSubscriptions(send(ROOM, null)));
+
+        registry.unregisterSubscription(unsubscribe("s1", "sub-0"));
+        assertEquals(Map.of("s1", List.of("sub-1"), "s2", List.of("sub-0")),
+                registry.findSubscriptions(send(ROOM, null)));
+
+        registry.unregisterAllSubscriptions("s1");
+        registry.unregisterAllSubscriptions("s2");
+        assertTrue(registry.findSubscriptions(send(ROOM, null)).isEmpty());
+    }
+
+    @Test
+    void patternSubscriptionsAreMatchedWithTheExactOnes() {
+        registry.registerSubscription(subscribe("s1", "sub-0", ROOM, null));
+        registry.registerSubscription(subscribe("s2", "sub-0", "/topic/room/*", null));
+
+        assertEquals(Map.of("s1", List.of("sub-0"), "s2", List.of("sub-0")),
+                registry.findSubscriptions(send(ROOM, null)));
+
+        registry.unregisterAllSubscriptions("s2");
+        assertEquals(Map.of("s1", List.of("sub-0")), registry.findSubscriptions(send(ROOM, null)));
+    }
+
+    @Test
+    void selectorHeadersAreIgnoredWhileSelectorsAreOff() {
+        registry.registerSubscription(subscribe("s1", "sub-0", ROOM, "headers.kind == 'image'"));
+
+        assertEquals(Map.of("s1", List.of("sub-0")), registry.findSubscriptions(send(ROOM, "text")));
+    }
+
+    @Test
+    void selectorSubscriptionsOnlyGetMatchingMessages() {
+        registry.setSelectorHeaderName("selector");
+        registry.registerSubscription(subscribe("s1", "sub-0", ROOM, null));
+        registry.registerSubscription(subscribe("s2", "sub-0", ROOM, "headers.kind == 'image'"));
+
+        MultiValueMap<String, String> images = registry.findSubscriptions(send(ROOM, "image"));
+        assertEquals(Map.of("s1", List.of("sub-0"), "s2", List.of("sub-0")), images);
+
+        MultiValueMap<String, String> texts = registry.findSubscriptions(send(ROOM, "text"));
+        assertEquals(Map.of("s1", List.of("sub-0")), texts);
+
+        registry.unregisterSubscription(unsubscribe("s2", "sub-0"));
+        assertEquals(Map.of("s1", List.of("sub-0")), registry.findSubscriptions(send(ROOM, "image")));
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination, String selector) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (selector != null) {
+            accessor.setNativeHeader("selector", selector);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> send(String destination, String kind) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        if (kind != null) {
+            accessor.setHeader("kind", kind);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.RoomPresenceInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdleSessionReaperTest {
+
+    private static final long IDLE_TIMEOUT_MS = 200;
+
+    private IdleSessionReaper reaper;
+    private UserPresenceRoomService presence;
+    private SimpMessagingTemplate messagingTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private WebSocketHandler handler;
+    private ChannelInterceptor activity;
+
+    @BeforeEach
+    void setUp() {
+        presence = mock(UserPresenceRoomService.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        reaper = reaper(8);
+        handler = reaper.decorate(mock(WebSocketHandler.class));
+        activity = reaper.activityInterceptor();
+    }
+
+    private IdleSessionReaper reaper(int wheelSize) {
+        IdleSessionReaper idleSessionReaper = new IdleSessionReaper();
+        ReflectionTestUtils.setField(idleSessionReaper, "userPresenceService", presence);
+        ReflectionTestUtils.setField(idleSessionReaper, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(idleSessionReaper, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(idleSessionReaper, "idleTimeoutMs", IDLE_TIMEOUT_MS);
+        ReflectionTestUtils.setField(idleSessionReaper, "wheelSize", wheelSize);
+        idleSessionReaper.init();
+        return idleSessionReaper;
+    }
+
+    private WebSocketSession connect(String id) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        handler.afterConnectionEstablished(session);
+        return session;
+    }
+
+    private void frameFrom(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+        accessor.setSessionId(sessionId);
+        activity.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private double reapedCount() {
+        return meterRegistry.get("hashchat.websocket.reaped").counter().count();
+    }
+
+    @Test
+    void closesASessionThatStaysIdle() throws Exception {
+        RoomPresenceInfo info = new RoomPresenceInfo("room1", List.of());
+        when(presence.removeUserFromRoom("s1")).thenReturn(info);
+        WebSocketSession session = connect("s1");
+
+        reaper.tick();
+        verify(session, never()).close(any());
+
+        Thread.sleep(IDLE_TIMEOUT_MS + 100);
+        reaper.tick();
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(presence).removeUserFromRoom("s1");
+        verify(messagingTemplate).convertAndSend("/topic/room/room1/activeUsers", info.getActiveUsers());
+        assertEquals(1.0, reapedCount());
+
+        // Not tracked any more: a later tick doesn't close it again
+        Thread.sleep(IDLE_TIMEOUT_MS + 100);
+        reaper.tick();
+        assertEquals(1.0, reapedCount());
+    }
+
+    @Test
+    void keepsASessionThatKeepsSendingFrames() throws Exception {
+        WebSocketSession active = connect("active");
+        WebSocketSession idle = connect("idle");
+
+        long end = System.currentTimeMillis() + 2 * IDLE_TIMEOUT_MS + 100;
+        while (System.currentTimeMillis() < end) {
+            frameFrom("active");
+            reaper.tick();
+            Thread.sleep(10);
+        }
+        verify(active, never()).close(any());
+        verify(idle).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1.0, reapedCount());
+    }
+
+    @Test
+    void forgetsSessionsThatClosedOnTheirOwn() throws Exception {
+        WebSocketSession session = connect("s1");
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        Thread.sleep(IDLE_TIMEOUT_MS + 100);
+        reaper.tick();
+        verify(session, never()).close(any());
+        verify(presence, never()).removeUserFromRoom(anyString());
+        assertEquals(0.0, reapedCount());
+    }
+
+    @Test
+    void catchesUpOnMissedTicks() throws Exception {
+        WebSocketSession session = connect("s1");
+        // The scheduler was busy for more than a whole turn of the wheel
+        Thread.sleep(2 * IDLE_TIMEOUT_MS + 100);
+        reaper.tick();
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    void derivesTheTickFromTheIdleTimeoutAndRejectsTooSmallWheels() {
+        // 8 slots span a bit more than the idle timeout: 7 ticks of ceil(200 / 7) ms
+        assertEquals(29L, ReflectionTestUtils.getField(reaper, "tickMs"));
+        assertThrows(IllegalArgumentException.class, () -> reaper(1));
+        assertThrows(IllegalArgumentException.class, () -> reaper(0));
+    }
+}
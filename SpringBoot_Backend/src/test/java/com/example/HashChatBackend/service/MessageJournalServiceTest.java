@@ -0,0 +1,230 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageJournalServiceTest {
+
+    private static final String ROOM = "room1";
+    private static final String SEGMENT = "00000000000000000000.journal";
+
+    @TempDir
+    Path dir;
+
+    private MessageStoreService store;
+    private MessageDeadLetterService deadLetters;
+    private SimpleMeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    // Seqs written to MongoDB, in order
+    private final List<Long> written = new CopyOnWriteArrayList<>();
+    private volatile boolean mongoDown;
+
+    private final List<MessageJournalService> started = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        store = mock(MessageStoreService.class);
+        deadLetters = mock(MessageDeadLetterService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        doAnswer(invocation -> {
+            if (mongoDown) {
+                throw new RuntimeException("MongoDB is down");
+            }
+            List<MessageStoreService.PendingMessage> batch = invocation.getArgument(0);
+            batch.forEach(pending -> written.add(pending.getMessage().getSeq()));
+            return null;
+        }).when(store).writeBatch(anyList());
+        when(store.filterUnwritten(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoDown = false;
+        for (MessageJournalService journal : started) {
+            journal.stop();
+        }
+    }
+
+    private MessageJournalService start() throws IOException {
+        MessageJournalService journal = new MessageJournalService();
+        ReflectionTestUtils.setField(journal, "messageStoreService", store);
+        ReflectionTestUtils.setField(journal, "roomSummaryService", mock(RoomSummaryService.class));
+        ReflectionTestUtils.setField(journal, "messageDeadLetterService", deadLetters);
+        ReflectionTestUtils.setField(journal, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(journal, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(journal, "fsync", "none");
+        ReflectionTestUtils.setField(journal, "batchSize", 500);
+        ReflectionTestUtils.setField(journal, "idleMs", 5L);
+        ReflectionTestUtils.setField(journal, "maxAttempts", 3);
+        ReflectionTestUtils.setField(journal, "retryBackoffMs", 5L);
+        journal.start();
+        started.add(journal);
+        return journal;
+    }
+
+    // Simulates a crash: the projector stops without the rest being projected
+    private void crash(MessageJournalService journal) {
+        mongoDown = true;
+        journal.stop();
+        started.remove(journal);
+        mongoDown = false;
+    }
+
+    private static MessageStoreService.PendingMessage pending(long seq) {
+        Message message = new Message("m" + seq, seq, "user@example.com", "User", "message " + seq, null, LocalDateTime.now());
+        return new MessageStoreService.PendingMessage(ROOM, 0, message);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    // Start offsets of the records at the beginning of the segment file
+    private List<Integer> recordOffsets(int count) throws IOException {
+        ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(SEGMENT)));
+        List<Integer> offsets = new ArrayList<>();
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            offsets.add(offset);
+            offset += 8 + segment.getInt(offset);
+        }
+        return offsets;
+    }
+
+    private void overwrite(int offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(SEGMENT), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+
+    @Test
+    void projectsAppendedMessagesInOrder() throws Exception {
+        MessageJournalService journal = start();
+        for (long seq = 1; seq <= 5; seq++) {
+            journal.append(pending(seq));
+        }
+        await(() -> written.size() == 5);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), written);
+    }
+
+    @Test
+    void replaysUnprojectedRecordsOnStartup() throws Exception {
+        mongoDown = true;
+        MessageJournalService crashed = start();
+        for (long seq = 1; seq <= 3; seq++) {
+            crashed.append(pending(seq));
+        }
+        crash(crashed);
+        assertTrue(written.isEmpty());
+
+        start(); // replays before returning, so the messages are in MongoDB before new ones are placed
+        assertEquals(List.of(1L, 2L, 3L), written);
+        verify(store, atLeastOnce()).filterUnwritten(anyList()); // the crashed run may have written some of them
+    }
+
+    @Test
+    void replayStopsAtARecordThatFailsItsCrcAndWritesOverIt() throws Exception {
+        mongoDown = true;
+        MessageJournalService crashed = start();
+        for (long seq = 1; seq <= 3; seq++) {
+            crashed.append(pending(seq));
+        }
+        crash(crashed);
+        int third = recordOffsets(3).get(2);
+        overwrite(third + 8 + 2, "X".getBytes(StandardCharsets.UTF_8)); // flip a payload byte of record 3
+
+        MessageJournalService journal = start();
+        assertEquals(List.of(1L, 2L), written);
+
+        // The torn tail is dropped: the next record takes record 3's place
+        journal.append(pending(4));
+        await(() -> written.size() == 3);
+        assertEquals(List.of(1L, 2L, 4L), written);
+        assertEquals(third, (int) recordOffsets(3).get(2));
+    }
+
+    @Test
+    void replayStopsAtATornRecord() throws Exception {
+        mongoDown = true;
+        MessageJournalService crashed = start();
+        for (long seq = 1; seq <= 3; seq++) {
+            crashed.append(pending(seq));
+        }
+        crash(crashed);
+        // Length claims more bytes than the segment holds, as a half-written header could
+        overwrite(recordOffsets(3).get(1), ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array());
+
+        start();
+        assertEquals(List.of(1L), written);
+    }
+
+    @Test
+    void resumesFromTheCheckpoint() throws Exception {
+        MessageJournalService first = start();
+        first.append(pending(1));
+        first.append(pending(2));
+        await(() -> written.size() == 2);
+        first.stop();
+        started.remove(first);
+
+        MessageJournalService second = start();
+        second.append(pending(3));
+        await(() -> written.size() == 3);
+        assertEquals(List.of(1L, 2L, 3L), written); // nothing projected twice
+    }
+
+    @Test
+    void parksABatchThatKeepsFailingAndMovesOn() throws Exception {
+        when(deadLetters.park(anyList(), eq("journal"), anyString())).thenReturn(true);
+        MessageJournalService journal = start();
+        mongoDown = true;
+        journal.append(pending(1));
+        await(() -> meterRegistry.get("hashchat.messages.journal.projection.deadlettered").counter().count() == 1.0);
+        verify(deadLetters).park(anyList(), eq("journal"), any());
+        assertEquals(3.0, meterRegistry.get("hashchat.messages.journal.projection.failed").counter().count());
+
+        mongoDown = false;
+        journal.append(pending(2));
+        await(() -> written.size() == 1);
+        assertEquals(List.of(2L), written);
+    }
+}
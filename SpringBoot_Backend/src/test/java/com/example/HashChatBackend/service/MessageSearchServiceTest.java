@@ -0,0 +1,209 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import com.example.HashChatBackend.model.MessageSearchPage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageSearchServiceTest {
+
+    private static final String ROOM = "room1";
+
+    private MessageSearchService search;
+    private MessageStoreService store;
+
+    @BeforeEach
+    void setUp() {
+        store = mock(MessageStoreService.class);
+        when(store.getMessagesBefore(anyString(), isNull(), anyInt())).thenReturn(new MessageHistoryPage(new ArrayList<>(), null, false));
+        search = service(1000);
+    }
+
+    private MessageSearchService service(int messagesPerRoom) {
+        MessageSearchService service = new MessageSearchService();
+        ReflectionTestUtils.setField(service, "messageStoreService", store);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "maxRooms", 10L);
+        ReflectionTestUtils.setField(service, "messagesPerRoom", messagesPerRoom);
+        ReflectionTestUtils.setField(service, "maxPrefixExpansions", 64);
+        service.init();
+        return service;
+    }
+
+    private static Message message(long seq, String content) {
+        return new Message("m" + seq, seq, "user@example.com", "User", content, null, LocalDateTime.now().minusMinutes(100 - seq));
+    }
+
+    private void index(String... contents) {
+        for (int i = 0; i < contents.length; i++) {
+            search.index(ROOM, message(i + 1, contents[i]));
+        }
+    }
+
+    private List<Long> seqs(String query) {
+        return seqs(search.search(ROOM, query, 0, 20));
+    }
+
+    private static List<Long> seqs(MessageSearchPage page) {
+        return page.getMessages().stream().map(Message::getSeq).toList();
+    }
+
+    @Test
+    void ranksMoreOccurrencesAndShorterMessagesHigher() {
+        index("deploy the thing",                              // 1
+                "deploy deploy deploy the thing",             // 2
+                "we should deploy it after lunch then go home", // 3
+                "nothing to see here");                        // 4
+
+        assertEquals(List.of(2L, 1L, 3L), seqs("deploy"));
+    }
+
+    @Test
+    void rareWordsOutweighCommonOnes() {
+        index("kubernetes is up", "kettle is on", "kettle is off", "kettle is up");
+
+        // k* expands to both words; the oldest message ranks first because its word is the rare one
+        MessageSearchPage page = search.search(ROOM, "k*", 0, 20);
+        assertEquals(List.of(1L, 4L, 3L, 2L), seqs(page));
+        assertEquals(4, page.getTotalHits());
+    }
+
+    @Test
+    void equalScoresAreNewestFirst() {
+        index("lunch at noon", "lunch at noon", "lunch at noon");
+        assertEquals(List.of(3L, 2L, 1L), seqs("lunch"));
+    }
+
+    @Test
+    void allWordsMustMatch() {
+        index("release notes for friday", "release day", "notes from the meeting");
+        assertEquals(List.of(1L), seqs("release notes"));
+        assertEquals(List.of(), seqs("release meeting"));
+        assertEquals(List.of(), seqs("missing"));
+    }
+
+    @Test
+    void phrasesMatchAdjacentWordsInOrder() {
+        index("the quick fox jumps",   // 1
+                "fox quick",           // 2 wrong order
+                "quick brown fox",     // 3 not adjacent
+                "a quick fox, a quick fox"); // 4 twice
+
+        assertEquals(List.of(4L, 1L), seqs("\"quick fox\""));
+        assertEquals(List.of(1L), seqs("\"quick fox\" jumps"));
+        assertEquals(List.of(), seqs("\"fox jumps high\""));
+        assertEquals(4, seqs("quick fox").size()); // unquoted: both words anywhere
+    }
+
+    @Test
+    void prefixMatchesEveryWordStartingWithIt() {
+        index("hello", "help me", "helicopter", "shell", "he");
+        assertEquals(List.of(1L, 2L, 3L), seqs("hel*").stream().sorted().toList());
+        assertEquals(List.of(2L), seqs("hel* me"));
+    }
+
+    @Test
+    void prefixExpandsToTheMostFrequentWords() {
+        ReflectionTestUtils.setField(search, "maxPrefixExpansions", 1);
+        index("meetable", "meeting today", "meeting tomorrow", "meeting again"); // meetable sorts first
+
+        assertEquals(List.of(4L, 3L, 2L), seqs("meet*"));
+    }
+
+    @Test
+    void ignoresCaseAndPunctuation() {
+        index("Meeting at 3pm, DON'T be late!");
+        assertEquals(List.of(1L), seqs("meeting"));
+        assertEquals(List.of(1L), seqs("LATE"));
+        assertEquals(List.of(1L), seqs("\"don t\""));
+        assertEquals(List.of(1L), seqs("3pm"));
+    }
+
+    @Test
+    void pagesThroughRankedResults() {
+        for (int i = 1; i <= 5; i++) {
+            search.index(ROOM, message(i, "standup " + i));
+        }
+        MessageSearchPage first = search.search(ROOM, "standup", 0, 2);
+        MessageSearchPage third = search.search(ROOM, "standup", 2, 2);
+        assertEquals(List.of(5L, 4L), seqs(first));
+        assertEquals(List.of(1L), seqs(third));
+        assertEquals(5, third.getTotalHits());
+        assertTrue(seqs(search.search(ROOM, "standup", 3, 2)).isEmpty());
+        // page * size past Integer.MAX_VALUE is just another page beyond the results
+        assertTrue(seqs(search.search(ROOM, "standup", Integer.MAX_VALUE, 100)).isEmpty());
+    }
+
+    @Test
+    void emptyQueryFindsNothing() {
+        index("anything");
+        assertTrue(seqs("").isEmpty());
+        assertTrue(seqs("  !!  ").isEmpty());
+        assertTrue(search.search(ROOM, null, 0, 20).isComplete());
+    }
+
+    @Test
+    void loadsStoredHistoryOnceAndSkipsDuplicates() {
+        List<Message> stored = List.of(message(1, "stored hello"), message(2, "stored again"));
+        when(store.getMessagesBefore(ROOM, null, 1000)).thenReturn(new MessageHistoryPage(new ArrayList<>(stored), null, false));
+        search.index(ROOM, message(2, "stored again")); // sent live while the room loads
+
+        assertEquals(List.of(2L, 1L), seqs("stored"));
+        assertEquals(List.of(2L, 1L), seqs("stored"));
+        verify(store, times(1)).getMessagesBefore(ROOM, null, 1000);
+        assertTrue(search.search(ROOM, "stored", 0, 20).isComplete());
+    }
+
+    @Test
+    void keepsOnlyTheNewestMessagesPerRoom() {
+        search = service(3);
+        index("alpha one", "alpha two", "alpha three", "alpha four");
+
+        MessageSearchPage page = search.search(ROOM, "alpha", 0, 20);
+        assertEquals(List.of(4L, 3L, 2L), seqs(page));
+        assertFalse(page.isComplete());
+        assertEquals(3, page.getSearchedMessages());
+        // Sent 98 minutes ago, see message()
+        assertTrue(page.getSearchedFrom().isAfter(LocalDateTime.now().minusMinutes(99))
+                && page.getSearchedFrom().isBefore(LocalDateTime.now().minusMinutes(97)));
+        assertTrue(seqs("one").isEmpty()); // its postings went with it
+
+        search.index(ROOM, message(1, "alpha late")); // older than the whole index
+        assertEquals(List.of(4L, 3L, 2L), seqs("alpha"));
+    }
+
+    @Test
+    void historyBeyondTheLoadedPageMarksResultsIncomplete() {
+        when(store.getMessagesBefore(ROOM, null, 1000))
+                .thenReturn(new MessageHistoryPage(new ArrayList<>(List.of(message(5, "old news"))), 5L, true));
+        assertFalse(search.search(ROOM, "news", 0, 20).isComplete());
+    }
+
+    @Test
+    void expireRemovesMessagesFromTheIndex() {
+        index("retention one", "retention two", "retention three");
+        search.expire(ROOM, 3L, null);
+        assertEquals(List.of(3L), seqs("retention"));
+
+        search.expire(ROOM, null, LocalDateTime.now());
+        assertTrue(seqs("retention").isEmpty());
+    }
+}
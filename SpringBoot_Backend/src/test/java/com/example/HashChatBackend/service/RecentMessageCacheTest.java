@@ -0,0 +1,239 @@
+package com.example.HashChatBackend.service;
+
+import com.example.HashChatBackend.model.Message;
+import com.example.HashChatBackend.model.MessageHistoryPage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecentMessageCacheTest {
+
+    private static final String ROOM = "room1";
+    private static final int RING_SIZE = 10;
+
+    private RecentMessageCache cache;
+    private MessageStoreService store;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        store = mock(MessageStoreService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new RecentMessageCache();
+        ReflectionTestUtils.setField(cache, "messageStoreService", store);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "messagesPerRoom", RING_SIZE);
+        ReflectionTestUtils.setField(cache, "maxRooms", 100);
+        cache.init();
+    }
+
+    private static Message message(long seq) {
+        return new Message("m" + seq, seq, "user" + (seq % 2), "User " + (seq % 2), "hello " + seq, null, LocalDateTime.now());
+    }
+
+    // Sends messages 1..lastSeq through the cache; the store holds all of them
+    private void send(long lastSeq) {
+        for (long seq = 1; seq <= lastSeq; seq++) {
+            cache.add(ROOM, message(seq));
+        }
+        when(store.getLastSeq(ROOM)).thenReturn(lastSeq);
+        when(store.getMinSeq(ROOM)).thenReturn(1L);
+    }
+
+    private static List<Long> seqs(MessageHistoryPage page) {
+        return page.getMessages().stream().map(Message::getSeq).toList();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("hashchat.messages.recent.cache").tag("result", result).counter().count();
+    }
+
+    @Test
+    void servesTheNewestWindowFromTheRing() {
+        send(25);
+
+        MessageHistoryPage page = cache.getMessagesBefore(ROOM, null, 5);
+        assertEquals(List.of(21L, 22L, 23L, 24L, 25L), seqs(page));
+        assertTrue(page.isHasMore());
+        assertEquals(21L, page.getNextCursor());
+
+        page = cache.getMessagesBefore(ROOM, 21L, 5);
+        assertEquals(List.of(16L, 17L, 18L, 19L, 20L), seqs(page));
+
+        verify(store, never()).getMessagesBefore(anyString(), any(), anyInt());
+        assertEquals(2.0, count("hit"));
+    }
+
+    @Test
+    void hasNoMoreAtTheStoresLowestSeq() {
+        send(8);
+        when(store.getMinSeq(ROOM)).thenReturn(4L); // 1..3 were removed by retention
+
+        MessageHistoryPage page = cache.getMessagesBefore(ROOM, null, 3);
+        assertEquals(List.of(6L, 7L, 8L), seqs(page));
+        assertTrue(page.isHasMore());
+        assertEquals(6L, page.getNextCursor());
+
+        page = cache.getMessagesBefore(ROOM, null, 5);
+        assertEquals(List.of(4L, 5L, 6L, 7L, 8L), seqs(page));
+        assertFalse(page.isHasMore());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void goesToTheStoreForWindowsOutsideTheRing() {
+        send(25);
+        List<Message> older = new ArrayList<>();
+        for (long seq = 6; seq <= 10; seq++) {
+            older.add(message(seq));
+        }
+        MessageHistoryPage stored = new MessageHistoryPage(older, 6L, true);
+        when(store.getMessagesBefore(ROOM, 11L, 5)).thenReturn(stored);
+
+        MessageHistoryPage page = cache.getMessagesBefore(ROOM, 11L, 5);
+        assertEquals(List.of(6L, 7L, 8L, 9L, 10L), seqs(page));
+        assertEquals(1.0, count("miss"));
+
+        // Larger than the ring
+        when(store.getMessagesBefore(ROOM, null, RING_SIZE + 1)).thenReturn(new MessageHistoryPage(new ArrayList<>(), null, false));
+        cache.getMessagesBefore(ROOM, null, RING_SIZE + 1);
+        verify(store).getMessagesBefore(ROOM, null, RING_SIZE + 1);
+    }
+
+    @Test
+    void fillsTheRingOnAMissAndHitsAfterwards() {
+        when(store.getLastSeq(ROOM)).thenReturn(5L);
+        when(store.getMinSeq(ROOM)).thenReturn(1L);
+        List<Message> stored = new ArrayList<>();
+        for (long seq = 1; seq <= 5; seq++) {
+            stored.add(message(seq));
+        }
+        when(store.getMessagesBefore(ROOM, null, 5)).thenReturn(new MessageHistoryPage(stored, null, false));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), seqs(cache.getMessagesBefore(ROOM, null, 5)));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), seqs(cache.getMessagesBefore(ROOM, null, 5)));
+        verify(store, times(1)).getMessagesBefore(ROOM, null, 5);
+        assertEquals(1.0, count("hit"));
+        assertEquals(1.0, count("miss"));
+    }
+
+    @Test
+    void aSeqGapIsAMiss() {
+        // Seqs leased by another node never arrive here
+        for (long seq : new long[]{1, 2, 3, 5, 6}) {
+            cache.add(ROOM, message(seq));
+        }
+        when(store.getLastSeq(ROOM)).thenReturn(6L);
+        when(store.getMinSeq(ROOM)).thenReturn(1L);
+        when(store.getMessagesBefore(ROOM, null, 5)).thenReturn(new MessageHistoryPage(new ArrayList<>(), null, false));
+
+        cache.getMessagesBefore(ROOM, null, 5);
+        verify(store).getMessagesBefore(ROOM, null, 5);
+    }
+
+    @Test
+    void aSlotOnlyTakesNewerMessages() {
+        send(15);
+        cache.add(ROOM, message(3)); // same slot as 13, arriving late
+
+        assertEquals(List.of(11L, 12L, 13L, 14L, 15L), seqs(cache.getMessagesBefore(ROOM, null, 5)));
+        verify(store, never()).getMessagesBefore(anyString(), any(), anyInt());
+    }
+
+    @Test
+    void messagesAfterReturnsWhatWasMissed() {
+        send(20);
+
+        MessageHistoryPage page = cache.getMessagesAfter(ROOM, 17, 5);
+        assertEquals(List.of(18L, 19L, 20L), seqs(page));
+        assertFalse(page.isHasMore());
+
+        // More missed than allowed: the newest ones, and a cursor to page back from
+        page = cache.getMessagesAfter(ROOM, 10, 5);
+        assertEquals(List.of(16L, 17L, 18L, 19L, 20L), seqs(page));
+        assertTrue(page.isHasMore());
+        assertEquals(16L, page.getNextCursor());
+
+        assertTrue(cache.getMessagesAfter(ROOM, 20, 5).getMessages().isEmpty());
+    }
+
+    @Test
+    void messagesPageCountsBackFromTheNewest() {
+        send(12);
+
+        assertEquals(List.of(8L, 9L, 10L, 11L, 12L), cache.getMessagesPage(ROOM, 0, 5).stream().map(Message::getSeq).toList());
+        assertEquals(List.of(3L, 4L, 5L, 6L, 7L), cache.getMessagesPage(ROOM, 1, 5).stream().map(Message::getSeq).toList());
+        // Walking back to page 3 reaches 1 and 2, which the ring no longer holds
+        when(store.getMessagesBefore(ROOM, 3L, 5)).thenReturn(new MessageHistoryPage(List.of(message(1), message(2)), null, false));
+        assertTrue(cache.getMessagesPage(ROOM, 3, 5).isEmpty());
+        assertTrue(cache.getMessagesPage(ROOM, -1, 5).isEmpty());
+    }
+
+    @Test
+    void messagesPagesDontOverlapAcrossSeqGaps() {
+        // 5, 6 and 9 were leased by another node and never used
+        List<Message> stored = new ArrayList<>();
+        for (long seq : new long[]{1, 2, 3, 4, 7, 8, 10, 11, 12}) {
+            stored.add(message(seq));
+            cache.add(ROOM, message(seq));
+        }
+        when(store.getLastSeq(ROOM)).thenReturn(12L);
+        when(store.getMinSeq(ROOM)).thenReturn(1L);
+        when(store.getMessagesBefore(anyString(), any(), anyInt())).thenAnswer(invocation -> {
+            Long before = invocation.getArgument(1);
+            int limit = invocation.getArgument(2);
+            List<Message> older = stored.stream().filter(m -> before == null || m.getSeq() < before).toList();
+            List<Message> page = new ArrayList<>(older.subList(Math.max(0, older.size() - limit), older.size()));
+            boolean hasMore = page.size() < older.size();
+            return new MessageHistoryPage(page, hasMore ? page.getFirst().getSeq() : null, hasMore);
+        });
+
+        assertEquals(List.of(10L, 11L, 12L), cache.getMessagesPage(ROOM, 0, 3).stream().map(Message::getSeq).toList());
+        assertEquals(List.of(4L, 7L, 8L), cache.getMessagesPage(ROOM, 1, 3).stream().map(Message::getSeq).toList());
+        assertEquals(List.of(1L, 2L, 3L), cache.getMessagesPage(ROOM, 2, 3).stream().map(Message::getSeq).toList());
+        assertTrue(cache.getMessagesPage(ROOM, 3, 3).isEmpty());
+    }
+
+    @Test
+    void emptyRoomHasNothing() {
+        when(store.getLastSeq(ROOM)).thenReturn(0L);
+        MessageHistoryPage page = cache.getMessagesBefore(ROOM, null, 5);
+        assertTrue(page.getMessages().isEmpty());
+        assertFalse(page.isHasMore());
+        verify(store, never()).getMessagesBefore(anyString(), isNull(), eq(5));
+    }
+
+    @Test
+    void anonymizesCachedMessagesOfASender() {
+        send(4);
+        cache.anonymizeSender("user1");
+
+        for (Message message : cache.getMessagesBefore(ROOM, null, 4).getMessages()) {
+            if (message.getSeq() % 2 == 1) {
+                assertEquals(MessageAnonymizationService.DELETED_USER_NAME, message.getSender());
+            } else {
+                assertEquals("User 0", message.getSender());
+            }
+        }
+    }
+}